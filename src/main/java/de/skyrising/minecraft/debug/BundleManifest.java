@@ -0,0 +1,173 @@
+package de.skyrising.minecraft.debug;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records which input every file of an output bundle directory was produced from, so files whose output is still
+ * current can be skipped when the same bundle is analyzed again.
+ * <p>
+ * Layout (big endian): magic, version, game version, mappings version, entry count, entries of path, input size,
+ * input modification time, input hash, output size and output modification time. Strings are written with
+ * {@link DataOutput#writeUTF}, an empty mappings version means the version of the mappings is unknown.
+ */
+final class BundleManifest {
+    static final String FILE_NAME = ".minecraft-debug-manifest";
+    private static final int MAGIC = 0x4d444d46; // MDMF
+    private static final int VERSION = 1;
+
+    private final String gameVersion;
+    private final String mappingsVersion;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    BundleManifest(String gameVersion, String mappingsVersion) {
+        this.gameVersion = gameVersion;
+        this.mappingsVersion = mappingsVersion;
+    }
+
+    /**
+     * @return the manifest in the file, or null if there is none or it can't be read
+     */
+    static BundleManifest read(Path file) {
+        if (!Files.exists(file)) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                System.out.println("Ignoring invalid manifest " + file);
+                return null;
+            }
+            String gameVersion = in.readUTF();
+            String mappingsVersion = in.readUTF();
+            BundleManifest manifest = new BundleManifest(gameVersion, mappingsVersion.isEmpty() ? null : mappingsVersion);
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                manifest.entries.put(path, new Entry(in.readLong(), in.readLong(), in.readLong(), in.readLong(), in.readLong()));
+            }
+            return manifest;
+        } catch (IOException e) {
+            System.out.println("Could not read manifest " + file + ": " + e);
+            return null;
+        }
+    }
+
+    void write(Path file) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(gameVersion);
+        out.writeUTF(mappingsVersion == null ? "" : mappingsVersion);
+        Map<String, Entry> sorted = new TreeMap<>(entries);
+        out.writeInt(sorted.size());
+        for (Map.Entry<String, Entry> e : sorted.entrySet()) {
+            Entry entry = e.getValue();
+            out.writeUTF(e.getKey());
+            out.writeLong(entry.size);
+            out.writeLong(entry.modified);
+            out.writeLong(entry.hash);
+            out.writeLong(entry.outputSize);
+            out.writeLong(entry.outputModified);
+        }
+        Path tmp = Files.createTempFile(file.getParent(), FILE_NAME, ".tmp");
+        try {
+            Files.write(tmp, bytes.toByteArray());
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Transformed outputs can only be reused if they were produced with the same, known mappings
+     */
+    boolean hasSameMappings(BundleManifest other) {
+        return mappingsVersion != null && gameVersion.equals(other.gameVersion) && mappingsVersion.equals(other.mappingsVersion);
+    }
+
+    Entry get(String path) {
+        return entries.get(path);
+    }
+
+    void put(String path, Entry entry) {
+        entries.put(path, entry);
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the first 8 bytes of the SHA-1 of the file contents
+     */
+    static long hash(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buf = ByteBuffer.allocate(64 * 1024);
+            while (channel.read(buf) >= 0) {
+                buf.flip();
+                digest.update(buf);
+                buf.clear();
+            }
+        }
+        return ByteBuffer.wrap(digest.digest()).getLong();
+    }
+
+    static final class Entry {
+        final long size;
+        // modification times in nanoseconds since the epoch
+        final long modified;
+        // 0 for files that are copied, their size and time are compared only
+        final long hash;
+        final long outputSize;
+        final long outputModified;
+
+        Entry(long size, long modified, long hash, long outputSize, long outputModified) {
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+            this.outputSize = outputSize;
+            this.outputModified = outputModified;
+        }
+
+        static Entry of(BasicFileAttributes input, long hash, Path output) throws IOException {
+            BasicFileAttributes out = Files.readAttributes(output, BasicFileAttributes.class);
+            return new Entry(input.size(), nanos(input), hash, out.size(), nanos(out));
+        }
+
+        boolean isInputCurrent(BasicFileAttributes input) {
+            return input.size() == size && nanos(input) == modified;
+        }
+
+        /**
+         * @return whether the output still exists unchanged since it was written
+         */
+        boolean isOutputCurrent(Path output) throws IOException {
+            BasicFileAttributes out;
+            try {
+                out = Files.readAttributes(output, BasicFileAttributes.class);
+            } catch (NoSuchFileException e) {
+                return false;
+            }
+            return out.size() == outputSize && nanos(out) == outputModified;
+        }
+
+        private static long nanos(BasicFileAttributes attrs) {
+            return attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        }
+    }
+}
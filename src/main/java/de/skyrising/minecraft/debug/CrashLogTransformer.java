@@ -0,0 +1,49 @@
+package de.skyrising.minecraft.debug;
+
+import de.skyrising.minecraft.deobf.Deobfuscator;
+import de.skyrising.util.ByteSlice;
+
+import java.io.IOException;
+
+/**
+ * Streams a crash report or log line by line on the byte level.
+ * Only stack frames and crash report details that are actually rewritten get decoded, every other line is copied
+ * through as raw bytes.
+ */
+public class CrashLogTransformer extends LineTransformer {
+    private static final byte[] FRAME_PREFIX = bytes("\tat");
+    private static final byte[][] DETAIL_PREFIXES = {bytes("\tAll players:"), bytes("\tPlayer Count:")};
+
+    private final Deobfuscator deobfuscator;
+    private final ByteSlice slice = new ByteSlice();
+    private final StackTraceUtil.Frame frame = new StackTraceUtil.Frame();
+
+    public CrashLogTransformer(Deobfuscator deobfuscator) {
+        this(deobfuscator, 64 * 1024);
+    }
+
+    public CrashLogTransformer(Deobfuscator deobfuscator, int bufSize) {
+        super(bufSize);
+        this.deobfuscator = deobfuscator;
+    }
+
+    @Override
+    protected void transformLine(byte[] line, int off, int len) throws IOException {
+        slice.set(line, off, len);
+        if (slice.startsWith(FRAME_PREFIX) && StackTraceUtil.parse(slice, frame)) {
+            StackTraceElement ste = frame.toStackTraceElement();
+            StackTraceElement deobfuscated = deobfuscator.deobfuscate(ste);
+            if (deobfuscated != ste) {
+                writeLine("\tat " + deobfuscated);
+                return;
+            }
+        } else {
+            for (byte[] prefix : DETAIL_PREFIXES) {
+                if (!slice.startsWith(prefix)) continue;
+                writeLine(DebugAnalyzer.transformCrashLine(deobfuscator, slice.toString()));
+                return;
+            }
+        }
+        writeLine(line, off, len);
+    }
+}
@@ -1,104 +1,380 @@
 package de.skyrising.minecraft.debug;
 
+import com.google.common.cache.CacheStats;
+import de.skyrising.minecraft.deobf.ClassIndex;
 import de.skyrising.minecraft.deobf.Deobfuscator;
+import de.skyrising.minecraft.deobf.JarClassPath;
 import de.skyrising.minecraft.deobf.Mappings;
 import de.skyrising.minecraft.deobf.YarnMappings;
+import de.skyrising.util.ZipIndex;
+import de.skyrising.util.ZipWriter;
 
 import java.io.*;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.net.URLClassLoader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.*;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 public class DebugAnalyzer {
+    private static final Path MINECRAFT_DIR = Paths.get(System.getProperty("user.home"), ".minecraft");
     private final Path from;
     private final Path to;
-    private ClassLoader classLoader;
-    private Mappings mappings;
     private Deobfuscator deobfuscator;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private final TransformerRegistry transformers = TransformerRegistry.createDefault();
+    private Path minecraftDir = MINECRAFT_DIR;
+    private Path cacheDir = ClassIndex.CACHE_DIR;
+    private MappingsProvider mappingsProvider = YarnMappings::loadLatest;
+    private DeobfuscatorProvider deobfuscatorProvider = classPath -> createDeobfuscator(minecraftDir, cacheDir, mappingsProvider, classPath);
+    private volatile boolean hardLinks;
+    private boolean incremental;
+    private boolean saveIndex = true;
 
     public DebugAnalyzer(Path from, Path to) {
         this.from = from;
         this.to = to;
     }
 
+    /**
+     * @param minecraftDir the directory the entries of {@code classpath.txt} are resolved against
+     */
+    public void setMinecraftDir(Path minecraftDir) {
+        this.minecraftDir = minecraftDir;
+    }
+
+    /**
+     * @param cacheDir where class indexes and pruned class paths are kept between runs
+     */
+    public void setCacheDir(Path cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    public void setMappingsProvider(MappingsProvider mappingsProvider) {
+        this.mappingsProvider = mappingsProvider;
+    }
+
+    /**
+     * Replaces how the deobfuscator for a bundle is created, e.g. to reuse one across runs
+     */
+    public void setDeobfuscatorProvider(DeobfuscatorProvider deobfuscatorProvider) {
+        this.deobfuscatorProvider = deobfuscatorProvider;
+    }
+
+    public void setThreads(int threads) {
+        if (threads < 1) throw new IllegalArgumentException("threads=" + threads + " < 1");
+        this.threads = threads;
+    }
+
+    /**
+     * Hard links files that are copied unchanged from a bundle directory instead of copying them. The output then
+     * shares these files with the input, so changes to one show up in the other.
+     */
+    public void setHardLinks(boolean hardLinks) {
+        this.hardLinks = hardLinks;
+    }
+
+    /**
+     * Skips files of a bundle directory whose output is still current, according to a manifest kept in the output
+     * directory. Transformed files are only reused if the mappings have a known, unchanged version.
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    /**
+     * Whether to save the class index after the analysis, disabled when the deobfuscator's owner saves it
+     */
+    public void setSaveIndex(boolean saveIndex) {
+        this.saveIndex = saveIndex;
+    }
+
+    public TransformerRegistry getTransformers() {
+        return transformers;
+    }
+
+    /**
+     * Transforms a bundle directory into another directory, or a zipped bundle into a new zip file
+     */
     public void analyze() throws IOException {
         long start = System.currentTimeMillis();
+        if (Files.isRegularFile(from)) {
+            if (incremental) System.out.println("Incremental mode needs a bundle directory, transforming everything");
+            analyzeZip();
+        } else {
+            analyzeDirectory();
+        }
+        if (saveIndex) deobfuscator.saveIndex();
+        CacheStats frameStats = deobfuscator.getFrameCacheStats();
+        System.out.printf("Frame cache: %d hits, %d misses (%.1f%%)\n", frameStats.hitCount(), frameStats.missCount(), frameStats.hitRate() * 100);
+        System.out.printf("%.3fs\n", (System.currentTimeMillis() - start) / 1e3);
+    }
+
+    private void analyzeDirectory() throws IOException {
         Path classPathFile = from.resolve("classpath.txt");
         if (!Files.exists(classPathFile)) {
             throw new IllegalArgumentException("No classpath.txt");
         }
-        List<String> cp = new ArrayList<>();
-        AtomicReference<String> version = new AtomicReference<>();
-        readLines(Files.newInputStream(classPathFile), line -> {
-            line = line.replace('\\', '/');
-            if (line.contains("/libraries")) {
-                cp.add(line.substring(line.indexOf("/libraries") + 1));
-            } else if (line.contains("/versions")) {
-                cp.add(line.substring(line.indexOf("/versions") + 1));
-                version.set(line.substring(line.lastIndexOf('/') + 1, line.lastIndexOf(".jar")));
+        GameClassPath classPath = GameClassPath.read(classPathFile);
+        this.deobfuscator = deobfuscatorProvider.get(classPath);
+        Path manifestFile = to.resolve(BundleManifest.FILE_NAME);
+        BundleManifest previous = incremental ? BundleManifest.read(manifestFile) : null;
+        BundleManifest manifest = incremental ? new BundleManifest(classPath.version, deobfuscator.mappings.getVersion()) : null;
+        boolean sameMappings = previous != null && manifest.hasSameMappings(previous);
+        AtomicInteger skipped = new AtomicInteger();
+        // transformations are queued first so copies fill the remaining threads instead of delaying them
+        List<FileTask> tasks = new ArrayList<>();
+        List<FileTask> copies = new ArrayList<>();
+        Files.walkFileTree(from, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Files.createDirectories(to.resolve(from.relativize(dir).toString()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                String relativePath = from.relativize(file).toString();
+                String path = relativePath.replace('\\', '/');
+                Path target = to.resolve(relativePath);
+                FileTransformer transformer = transformers.get(path, deobfuscator);
+                FileTask task = transformer == null ? () -> copyFile(file, target) : () -> transformFile(transformer, file, target);
+                if (manifest != null) {
+                    if (path.equals(BundleManifest.FILE_NAME)) return FileVisitResult.CONTINUE;
+                    BundleManifest.Entry entry = previous == null || (transformer != null && !sameMappings) ? null : previous.get(path);
+                    if (entry != null && !entry.isOutputCurrent(target)) entry = null;
+                    if (entry != null && entry.isInputCurrent(attrs)) {
+                        manifest.put(path, entry);
+                        skipped.incrementAndGet();
+                        return FileVisitResult.CONTINUE;
+                    }
+                    task = incrementalTask(task, transformer != null, file, attrs, target, path, entry, manifest, skipped);
+                }
+                (transformer == null ? copies : tasks).add(task);
+                return FileVisitResult.CONTINUE;
             }
         });
-        this.classLoader = createClassLoader(cp);
-        // Run class loader verification while requesting yarn version
-        CompletableFuture<Void> f = CompletableFuture.runAsync(() -> {
+        tasks.addAll(copies);
+        runTasks(tasks);
+        if (manifest != null) {
+            manifest.write(manifestFile);
+            System.out.printf("Skipped %d of %d files\n", skipped.get(), manifest.size());
+        }
+    }
+
+    /**
+     * Wraps a task to record its output in the manifest. Transformed files whose contents didn't change although
+     * their size or time did are not written again.
+     *
+     * @param previous the manifest entry of the file if its output is still current, or null
+     */
+    private static FileTask incrementalTask(FileTask task, boolean transformed, Path file, BasicFileAttributes attrs, Path target,
+                                            String path, BundleManifest.Entry previous, BundleManifest manifest, AtomicInteger skipped) {
+        return () -> {
+            long hash = transformed ? BundleManifest.hash(file) : 0;
+            if (transformed && previous != null && previous.hash == hash) {
+                skipped.incrementAndGet();
+            } else {
+                task.run();
+            }
+            manifest.put(path, BundleManifest.Entry.of(attrs, hash, target));
+        };
+    }
+
+    private void runTasks(List<FileTask> tasks) throws IOException {
+        if (threads == 1) {
+            for (FileTask task : tasks) task.run();
+            return;
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>(tasks.size());
+            for (FileTask task : tasks) {
+                futures.add(pool.submit(() -> {
+                    task.run();
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Transforms the entries on a pool while this thread writes the results in input order, at most
+     * {@code 4 * threads} entries behind. Entries without a transformer are copied without decompressing them.
+     */
+    private void analyzeZip() throws IOException {
+        try (ZipIndex zip = ZipIndex.open(from)) {
+            ZipIndex.Entry classPathEntry = zip.getEntry("classpath.txt");
+            if (classPathEntry == null) {
+                throw new IllegalArgumentException("No classpath.txt");
+            }
+            try (InputStream in = zip.getInputStream(classPathEntry)) {
+                this.deobfuscator = deobfuscatorProvider.get(GameClassPath.read(in));
+            }
+            ExecutorService pool = threads == 1 ? null : new ForkJoinPool(threads);
+            Executor executor = pool == null ? Runnable::run : pool;
+            ArrayDeque<PendingEntry> pending = new ArrayDeque<>();
+            try (FileChannel out = FileChannel.open(to, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+                 ZipWriter writer = new ZipWriter(out)) {
+                for (ZipIndex.Entry entry : zip.getEntries()) {
+                    FileTransformer transformer = entry.isDirectory() ? null : transformers.get(entry.name, deobfuscator);
+                    CompletableFuture<ZipWriter.Deflated> data = null;
+                    if (transformer != null) {
+                        data = CompletableFuture.supplyAsync(() -> {
+                            try {
+                                return transformEntry(zip, entry, transformer);
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        }, executor);
+                    }
+                    pending.add(new PendingEntry(entry, data));
+                    if (pending.size() >= 4 * threads) writeEntry(zip, writer, pending.remove());
+                }
+                while (!pending.isEmpty()) writeEntry(zip, writer, pending.remove());
+            } finally {
+                if (pool != null) pool.shutdownNow();
+            }
+        }
+    }
+
+    private static ZipWriter.Deflated transformEntry(ZipIndex zip, ZipIndex.Entry entry, FileTransformer transformer) throws IOException {
+        try (InputStream in = zip.getInputStream(entry); ZipWriter.Deflated data = new ZipWriter.Deflated()) {
+            transformer.transform(Channels.newChannel(in), Channels.newChannel(data));
+            return data;
+        }
+    }
+
+    private static void writeEntry(ZipIndex zip, ZipWriter writer, PendingEntry pending) throws IOException {
+        if (pending.data == null) {
+            writer.copyRaw(zip, pending.entry);
+            return;
+        }
+        ZipWriter.Deflated data;
+        try {
+            data = pending.data.join();
+        } catch (CompletionException e) {
+            throw unwrap(e.getCause());
+        }
+        writer.write(pending.entry, data);
+    }
+
+    private static IOException unwrap(Throwable cause) {
+        if (cause instanceof IOException) return (IOException) cause;
+        if (cause instanceof UncheckedIOException) return ((UncheckedIOException) cause).getCause();
+        if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+        if (cause instanceof Error) throw (Error) cause;
+        return new IOException(cause);
+    }
+
+    /**
+     * Loads the mappings for the game version while opening the class path and its class index
+     */
+    public static Deobfuscator createDeobfuscator(Path minecraftDir, Path cacheDir, MappingsProvider mappingsProvider, GameClassPath classPath) throws IOException {
+        CompletableFuture<String> hashFuture = CompletableFuture.supplyAsync(() -> {
             try {
-                classLoader.getResourceAsStream("net/minecraft/server/MinecraftServer.class").close();
-            } catch (IOException ignored) {}
+                return ClassIndex.hash(minecraftDir.resolve(classPath.versionJar), classPath.entries);
+            } catch (IOException e) {
+                System.out.println("Could not hash class path: " + e);
+                return null;
+            }
         });
-        this.mappings = YarnMappings.loadLatest(version.get());
-        try {
-            f.get();
-        } catch (InterruptedException | ExecutionException ignored) {
-            f.cancel(true);
-        }
-        this.deobfuscator = new Deobfuscator(mappings, classLoader);
-        Files.walk(this.from).forEach(from -> {
-            if (Files.isDirectory(from)) return;
-            Path to = this.to.resolve(this.from.relativize(from).toString());
+        CompletableFuture<JarClassPath> jarsFuture = hashFuture.thenApply(hash -> createClassPath(minecraftDir, cacheDir, classPath, hash));
+        CompletableFuture<ClassIndex> indexFuture = jarsFuture.thenCombine(hashFuture, (jars, hash) -> {
             try {
-                Files.createDirectories(to.getParent());
-                transformFile(from, to);
+                ClassIndex index = hash == null ? null : ClassIndex.open(cacheDir, classPath.version, hash);
+                // without cached classes the jars will be needed, so index them while the mappings load
+                if (index == null || index.size() == 0) warmUp(jars);
+                return index;
             } catch (IOException e) {
-                throw new UncheckedIOException(e);
+                System.out.println("Could not open class index: " + e);
+                warmUp(jars);
+                return null;
             }
         });
-        System.out.printf("%.3fs\n", (System.currentTimeMillis() - start) / 1e3);
+        Mappings mappings = mappingsProvider.load(classPath.version);
+        return new Deobfuscator(mappings, jarsFuture.join(), indexFuture.join());
     }
 
-    public static ClassLoader createClassLoader(List<String> paths) throws MalformedURLException {
-        Path basePath = Paths.get(System.getProperty("user.home"), ".minecraft");
-        URL[] urls = new URL[paths.size()];
-        for (int i = 0; i < urls.length; i++) {
-            urls[i] = basePath.resolve(paths.get(i)).toUri().toURL();
-        }
-        return new URLClassLoader(urls);
+    private static void warmUp(JarClassPath jars) {
+        CompletableFuture.runAsync(() -> {
+            try {
+                jars.size();
+            } catch (IOException ignored) {
+                // reported again on the first lookup
+            }
+        });
+    }
+
+    /**
+     * @param hash the class path hash of {@link ClassIndex#hash}, identifies the cached pruned class path
+     * @return the class path pruned to the jars that are relevant for the version jar, or all of it without a hash
+     */
+    public static JarClassPath createClassPath(Path minecraftDir, Path cacheDir, GameClassPath classPath, String hash) {
+        List<Path> jars = new ArrayList<>(classPath.entries.size());
+        for (String path : classPath.entries) jars.add(minecraftDir.resolve(path));
+        if (hash == null || classPath.versionJar == null) return new JarClassPath(jars);
+        Path prunedFile = cacheDir.resolve(classPath.version + "-" + hash + ".classpath");
+        return new JarClassPath(jars, minecraftDir.resolve(classPath.versionJar), prunedFile);
     }
 
-    private void transformFile(Path from, Path to) throws IOException {
-        if (from.endsWith("example_crash.txt")) {
-            try (BufferedReader reader = Files.newBufferedReader(from);
-                 BufferedWriter writer = Files.newBufferedWriter(to, StandardOpenOption.TRUNCATE_EXISTING)) {
-                // long start = System.nanoTime();
-                String line;
+    private void transformFile(FileTransformer transformer, Path from, Path to) throws IOException {
+        // the target may be a hard link to the input left by an earlier run, truncating it would wipe the input
+        Files.deleteIfExists(to);
+        try (ReadableByteChannel in = Files.newByteChannel(from);
+             WritableByteChannel out = Files.newByteChannel(to, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            transformer.transform(in, out);
+        }
+    }
 
-                while ((line = reader.readLine()) != null) {
-                    writer.write(transformCrashLine(deobfuscator, line));
-                    writer.write('\n');
-                }
-                // System.out.printf("%s: %.3fms\n", from, (System.nanoTime() - start) / 1e6);
+    /**
+     * Links the file if hard links are enabled and possible, otherwise copies it with {@link FileChannel#transferTo}
+     * when both sides are on the default file system
+     */
+    private void copyFile(Path from, Path to) throws IOException {
+        if (hardLinks && from.getFileSystem() == to.getFileSystem()) {
+            try {
+                Files.deleteIfExists(to);
+                Files.createLink(to, from);
+                return;
+            } catch (UnsupportedOperationException | FileSystemException e) {
+                // e.g. different file stores, stop trying for the rest of the bundle
+                System.out.println("Could not link " + from + ": " + e);
+                hardLinks = false;
             }
+        }
+        FileSystem defaultFs = FileSystems.getDefault();
+        if (from.getFileSystem() != defaultFs || to.getFileSystem() != defaultFs) {
+            Files.copy(from, to, StandardCopyOption.REPLACE_EXISTING);
             return;
         }
-        Files.copy(from, to, StandardCopyOption.REPLACE_EXISTING);
+        // unlink first like Files.copy does, the target may still be a hard link to the input
+        Files.deleteIfExists(to);
+        try (FileChannel in = FileChannel.open(from, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(to, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                long n = in.transferTo(position, size - position, out);
+                if (n <= 0) break;
+                position += n;
+            }
+        }
     }
 
     public static String transformCrashLine(Deobfuscator deobfuscator, String line) {
@@ -138,4 +414,74 @@ public class DebugAnalyzer {
             while ((line = reader.readLine()) != null) lineHandler.accept(line);
         }
     }
+
+    @FunctionalInterface
+    private interface FileTask {
+        void run() throws IOException;
+    }
+
+    private static final class PendingEntry {
+        final ZipIndex.Entry entry;
+        // null for entries that are copied unchanged
+        final CompletableFuture<ZipWriter.Deflated> data;
+
+        PendingEntry(ZipIndex.Entry entry, CompletableFuture<ZipWriter.Deflated> data) {
+            this.entry = entry;
+            this.data = data;
+        }
+    }
+
+    @FunctionalInterface
+    public interface MappingsProvider {
+        Mappings load(String gameVersion) throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface DeobfuscatorProvider {
+        Deobfuscator get(GameClassPath classPath) throws IOException;
+    }
+
+    /**
+     * The game version and class path of a bundle, relative to the minecraft directory
+     */
+    public static final class GameClassPath {
+        public final String version;
+        public final String versionJar;
+        public final List<String> entries;
+
+        public GameClassPath(String version, String versionJar, List<String> entries) {
+            this.version = version;
+            this.versionJar = versionJar;
+            this.entries = entries;
+        }
+
+        /**
+         * @return the class path of a version without libraries
+         */
+        public static GameClassPath ofVersion(String version) {
+            String versionJar = "versions/" + version + "/" + version + ".jar";
+            return new GameClassPath(version, versionJar, Collections.singletonList(versionJar));
+        }
+
+        public static GameClassPath read(Path classPathFile) throws IOException {
+            return read(Files.newInputStream(classPathFile));
+        }
+
+        public static GameClassPath read(InputStream classPathFile) throws IOException {
+            List<String> cp = new ArrayList<>();
+            AtomicReference<String> version = new AtomicReference<>();
+            AtomicReference<String> versionJar = new AtomicReference<>();
+            readLines(classPathFile, line -> {
+                line = line.replace('\\', '/');
+                if (line.contains("/libraries")) {
+                    cp.add(line.substring(line.indexOf("/libraries") + 1));
+                } else if (line.contains("/versions")) {
+                    versionJar.set(line.substring(line.indexOf("/versions") + 1));
+                    cp.add(versionJar.get());
+                    version.set(line.substring(line.lastIndexOf('/') + 1, line.lastIndexOf(".jar")));
+                }
+            });
+            return new GameClassPath(version.get(), versionJar.get(), cp);
+        }
+    }
 }
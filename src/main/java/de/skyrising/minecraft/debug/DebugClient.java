@@ -0,0 +1,101 @@
+package de.skyrising.minecraft.debug;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Sends requests to a {@link DebugServer} on the local machine
+ */
+public class DebugClient {
+    private final int port;
+
+    public DebugClient(int port) {
+        this.port = port;
+    }
+
+    /**
+     * @param path selects the transformer, null for a crash report
+     */
+    public void transformText(String version, String path, InputStream in, OutputStream out) throws IOException {
+        request(path == null ? "TEXT " + version : "TEXT " + version + " " + path, in, out);
+    }
+
+    public void transformBundle(Path from, Path to) throws IOException {
+        try (InputStream in = Files.newInputStream(from); OutputStream out = Files.newOutputStream(to)) {
+            request("BUNDLE", in, out);
+        }
+    }
+
+    public void stop() throws IOException {
+        request("STOP", null, null);
+    }
+
+    private void request(String header, InputStream payload, OutputStream result) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream(), 64 * 1024);
+            DebugServer.writeLine(out, header);
+            // text is transformed while it is sent, so the payload is written concurrently to reading the result
+            CompletableFuture<Void> send = CompletableFuture.runAsync(() -> {
+                try {
+                    if (payload != null) copy(payload, out);
+                    out.flush();
+                    socket.shutdownOutput();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            String status = DebugServer.readLine(in);
+            if (status == null) throw new IOException("No response");
+            if (status.startsWith("ERROR ")) throw new IOException(status.substring(6));
+            if (!status.equals("OK")) throw new IOException("Unexpected response: " + status);
+            readResult(in, result);
+            try {
+                send.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof UncheckedIOException) throw ((UncheckedIOException) e.getCause()).getCause();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Copies the chunks of a result until it ends, see {@link DebugServer}
+     *
+     * @param out where to write the result, null to discard it
+     */
+    private static void readResult(InputStream in, OutputStream out) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        byte[] buf = new byte[64 * 1024];
+        try {
+            while (true) {
+                int len = data.readInt();
+                if (len == 0) return;
+                if (len < 0) {
+                    String status = DebugServer.readLine(in);
+                    if (status == null || !status.startsWith("ERROR ")) throw new IOException("Unexpected response: " + status);
+                    throw new IOException(status.substring(6));
+                }
+                while (len > 0) {
+                    int n = Math.min(len, buf.length);
+                    data.readFully(buf, 0, n);
+                    if (out != null) out.write(buf, 0, n);
+                    len -= n;
+                }
+            }
+        } catch (EOFException e) {
+            throw new IOException("Truncated response", e);
+        }
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buf = new byte[64 * 1024];
+        int n;
+        while ((n = in.read(buf)) >= 0) out.write(buf, 0, n);
+    }
+}
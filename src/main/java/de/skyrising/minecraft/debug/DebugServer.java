@@ -0,0 +1,291 @@
+package de.skyrising.minecraft.debug;
+
+import de.skyrising.minecraft.deobf.ClassIndex;
+import de.skyrising.minecraft.deobf.Deobfuscator;
+import de.skyrising.minecraft.deobf.YarnMappings;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps warm {@link Deobfuscator}s for recently used game versions in a {@link DeobfuscatorRegistry} and serves
+ * requests on a loopback TCP port, one request per connection.
+ * <p>
+ * The client sends a header line, then the payload, then shuts down its output. The server answers with
+ * {@code OK} and the streamed result, or with {@code ERROR <message>}:
+ * <pre>
+ * TEXT &lt;version&gt; [&lt;path&gt;]   payload: a crash report or log, result: the transformed text
+ * BUNDLE                     payload: a zipped debug bundle, result: the transformed zip
+ * STOP                       stops the server
+ * </pre>
+ * The result is sent in chunks, each a big endian int length followed by that many bytes. A zero length ends a
+ * complete result, a negative length is followed by an {@code ERROR <message>} line for a failure after {@code OK}.
+ * A result without either was cut short.
+ * <p>
+ * The optional path of a text request selects the transformer like a file in a bundle would, it defaults to a crash
+ * report. Text requests for a version no bundle was seen for use the game jar without libraries.
+ */
+public class DebugServer {
+    public static final int DEFAULT_PORT = 25595;
+    private static final String DEFAULT_TEXT_PATH = "crash-reports/crash.txt";
+    private static final long SAVE_INTERVAL_MINUTES = 10;
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private final ServerSocket socket;
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "DebugServer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final TransformerRegistry transformers = TransformerRegistry.createDefault();
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private Path minecraftDir = Paths.get(System.getProperty("user.home"), ".minecraft");
+    private Path cacheDir = ClassIndex.CACHE_DIR;
+    private DebugAnalyzer.MappingsProvider mappingsProvider = YarnMappings::loadLatest;
+    private long memoryBudget = DeobfuscatorRegistry.DEFAULT_MEMORY_BUDGET;
+    private DeobfuscatorRegistry deobfuscators;
+
+    /**
+     * @param port the port to listen on, 0 for any free port
+     */
+    public DebugServer(int port) throws IOException {
+        this.socket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+    }
+
+    public int getPort() {
+        return socket.getLocalPort();
+    }
+
+    public void setThreads(int threads) {
+        if (threads < 1) throw new IllegalArgumentException("threads=" + threads + " < 1");
+        this.threads = threads;
+    }
+
+    /**
+     * @return the transformers for text requests and bundles, registrations may be changed before {@link #run()}
+     */
+    public TransformerRegistry getTransformers() {
+        return transformers;
+    }
+
+    public void setMinecraftDir(Path minecraftDir) {
+        this.minecraftDir = minecraftDir;
+    }
+
+    public void setCacheDir(Path cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    public void setMappingsProvider(DebugAnalyzer.MappingsProvider mappingsProvider) {
+        this.mappingsProvider = mappingsProvider;
+    }
+
+    /**
+     * @param memoryBudget the estimated memory the deobfuscators of all loaded versions may use in bytes
+     */
+    public void setMemoryBudget(long memoryBudget) {
+        if (memoryBudget < 0) throw new IllegalArgumentException("memoryBudget=" + memoryBudget + " < 0");
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Accepts connections until {@link #stop()} is called. Class indexes are saved periodically, when a version is
+     * unloaded and when the server stops, not after every request.
+     */
+    public void run() throws IOException {
+        deobfuscators = new DeobfuscatorRegistry(minecraftDir, cacheDir, mappingsProvider, memoryBudget);
+        ScheduledExecutorService saver = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "DebugServer-save");
+            thread.setDaemon(true);
+            return thread;
+        });
+        saver.scheduleWithFixedDelay(deobfuscators::saveIndexes, SAVE_INTERVAL_MINUTES, SAVE_INTERVAL_MINUTES, TimeUnit.MINUTES);
+        System.out.println("Listening on " + socket.getLocalSocketAddress());
+        try {
+            while (true) {
+                Socket client;
+                try {
+                    client = socket.accept();
+                } catch (SocketException e) {
+                    if (socket.isClosed()) break;
+                    throw e;
+                }
+                executor.execute(() -> handle(client));
+            }
+        } finally {
+            saver.shutdownNow();
+            executor.shutdown();
+            deobfuscators.saveIndexes();
+        }
+    }
+
+    public void stop() throws IOException {
+        socket.close();
+    }
+
+    private void handle(Socket client) {
+        try (Socket s = client) {
+            InputStream in = new BufferedInputStream(s.getInputStream());
+            Response out = new Response(new BufferedOutputStream(s.getOutputStream(), CHUNK_SIZE + 4));
+            String header = readLine(in);
+            try {
+                if (header == null) throw new IllegalArgumentException("Missing request");
+                String[] args = header.split(" ");
+                switch (args[0]) {
+                    case "TEXT":
+                        if (args.length < 2) throw new IllegalArgumentException("Missing version");
+                        transformText(args[1], args.length > 2 ? args[2] : DEFAULT_TEXT_PATH, in, out);
+                        break;
+                    case "BUNDLE":
+                        transformBundle(in, out);
+                        break;
+                    case "STOP":
+                        out.ok();
+                        stop();
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown request " + args[0]);
+                }
+                out.finish();
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+                out.error(e.toString());
+            }
+            out.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void transformText(String version, String path, InputStream in, Response out) throws IOException {
+        Deobfuscator deobfuscator = deobfuscators.get(DebugAnalyzer.GameClassPath.ofVersion(version));
+        FileTransformer transformer = transformers.get(path, deobfuscator);
+        if (transformer == null) transformer = new CrashLogTransformer(deobfuscator);
+        out.ok();
+        transformer.transform(Channels.newChannel(in), Channels.newChannel(out));
+    }
+
+    private void transformBundle(InputStream in, Response out) throws IOException {
+        Path input = Files.createTempFile("minecraft-debug-in", ".zip");
+        Path output = Files.createTempFile("minecraft-debug-out", ".zip");
+        try {
+            Files.copy(in, input, StandardCopyOption.REPLACE_EXISTING);
+            DebugAnalyzer analyzer = new DebugAnalyzer(input, output);
+            analyzer.setThreads(threads);
+            analyzer.setDeobfuscatorProvider(deobfuscators);
+            analyzer.setSaveIndex(false);
+            analyzer.analyze();
+            out.ok();
+            Files.copy(output, out);
+        } finally {
+            Files.deleteIfExists(input);
+            Files.deleteIfExists(output);
+        }
+    }
+
+    /**
+     * Reads an ASCII line terminated by {@code \n} without buffering past it
+     *
+     * @return the line or null at the end of the stream
+     */
+    static String readLine(InputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) return sb.length() == 0 ? null : sb.toString();
+            sb.append((char) b);
+        }
+        return sb.toString();
+    }
+
+    static void writeLine(OutputStream out, String line) throws IOException {
+        out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Frames the result into chunks once it is {@link #ok started}
+     */
+    private static final class Response extends FilterOutputStream {
+        private final byte[] chunk = new byte[CHUNK_SIZE];
+        private int count;
+        private boolean started;
+
+        Response(OutputStream out) {
+            super(out);
+        }
+
+        void ok() throws IOException {
+            writeLine(out, "OK");
+            started = true;
+        }
+
+        /**
+         * Ends a complete result
+         */
+        void finish() throws IOException {
+            writeChunk();
+            writeInt(0);
+        }
+
+        /**
+         * Reports a failure, as the status if the result hasn't started or as its trailer otherwise
+         */
+        void error(String message) throws IOException {
+            if (started) {
+                writeChunk();
+                writeInt(-1);
+            }
+            writeLine(out, "ERROR " + message);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == chunk.length) writeChunk();
+            chunk[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == chunk.length) writeChunk();
+                int n = Math.min(len, chunk.length - count);
+                System.arraycopy(b, off, chunk, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writeChunk();
+            out.flush();
+        }
+
+        private void writeChunk() throws IOException {
+            if (count == 0) return;
+            writeInt(count);
+            out.write(chunk, 0, count);
+            count = 0;
+        }
+
+        private void writeInt(int value) throws IOException {
+            out.write(value >>> 24);
+            out.write(value >>> 16);
+            out.write(value >>> 8);
+            out.write(value);
+        }
+    }
+}
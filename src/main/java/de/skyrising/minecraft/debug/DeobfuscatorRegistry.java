@@ -0,0 +1,98 @@
+package de.skyrising.minecraft.debug;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import de.skyrising.minecraft.deobf.Deobfuscator;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Keeps the deobfuscators of several game versions loaded at once, each with its mappings and class path.
+ * <p>
+ * Entries are weighed by {@link Deobfuscator#estimateSize()}, which counts the mappings, the bounded caches of the
+ * deobfuscator when full and the classes on its class path. The least recently used
+ * versions are evicted once the memory budget is exceeded. A single version larger than the budget is still returned,
+ * but not kept. Evicted class paths are left to the garbage collector
+ * instead of being closed, since a running request may still use them.
+ */
+public class DeobfuscatorRegistry implements DebugAnalyzer.DeobfuscatorProvider {
+    public static final long DEFAULT_MEMORY_BUDGET = 1L << 30;
+    private final Path minecraftDir;
+    private final Path cacheDir;
+    private final DebugAnalyzer.MappingsProvider mappingsProvider;
+    private final Cache<String, Deobfuscator> deobfuscators;
+
+    /**
+     * @param cacheDir where class indexes and pruned class paths are kept, see {@link DebugAnalyzer#setCacheDir}
+     * @param memoryBudget the estimated memory all loaded deobfuscators may use together in bytes
+     */
+    public DeobfuscatorRegistry(Path minecraftDir, Path cacheDir, DebugAnalyzer.MappingsProvider mappingsProvider, long memoryBudget) {
+        if (memoryBudget < 0) throw new IllegalArgumentException("memoryBudget=" + memoryBudget + " < 0");
+        this.minecraftDir = minecraftDir;
+        this.cacheDir = cacheDir;
+        this.mappingsProvider = mappingsProvider;
+        // weights are in KiB so a single entry fits into an int
+        this.deobfuscators = CacheBuilder.newBuilder()
+            .concurrencyLevel(1)
+            .maximumWeight(memoryBudget >> 10)
+            .<String, Deobfuscator>weigher((version, deobfuscator) -> (int) Math.min(Integer.MAX_VALUE, deobfuscator.estimateSize() >> 10))
+            .removalListener(DeobfuscatorRegistry::onRemoval)
+            .build();
+    }
+
+    /**
+     * @return the deobfuscator for the version of the class path, loading it if it isn't present.
+     *         Concurrent requests for the same version wait for a single load.
+     */
+    @Override
+    public Deobfuscator get(DebugAnalyzer.GameClassPath classPath) throws IOException {
+        Deobfuscator deobfuscator = deobfuscators.getIfPresent(classPath.version);
+        if (deobfuscator != null) return deobfuscator;
+        try {
+            return deobfuscators.get(classPath.version, () -> DebugAnalyzer.createDeobfuscator(minecraftDir, cacheDir, mappingsProvider, classPath));
+        } catch (ExecutionException | UncheckedExecutionException | ExecutionError e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * @return the deobfuscator for the version if it is loaded
+     */
+    public Deobfuscator getIfLoaded(String version) {
+        return deobfuscators.getIfPresent(version);
+    }
+
+    public long size() {
+        return deobfuscators.size();
+    }
+
+    /**
+     * Saves the classes added to the class indexes of all loaded versions
+     */
+    public void saveIndexes() {
+        for (Deobfuscator deobfuscator : deobfuscators.asMap().values()) saveIndex(deobfuscator);
+    }
+
+    private static void onRemoval(RemovalNotification<String, Deobfuscator> notification) {
+        System.out.printf("Unloading mappings for %s (%s)\n", notification.getKey(), notification.getCause());
+        Deobfuscator deobfuscator = notification.getValue();
+        if (deobfuscator != null) saveIndex(deobfuscator);
+    }
+
+    private static void saveIndex(Deobfuscator deobfuscator) {
+        try {
+            deobfuscator.saveIndex();
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Could not save class index: " + e);
+        }
+    }
+}
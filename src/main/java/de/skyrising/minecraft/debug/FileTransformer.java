@@ -0,0 +1,9 @@
+package de.skyrising.minecraft.debug;
+
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+public interface FileTransformer {
+    void transform(ReadableByteChannel in, WritableByteChannel out) throws IOException;
+}
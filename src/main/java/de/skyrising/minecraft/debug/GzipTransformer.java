@@ -0,0 +1,29 @@
+package de.skyrising.minecraft.debug;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Decompresses, transforms and recompresses a gzip file in a single streaming pass
+ */
+public class GzipTransformer implements FileTransformer {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private final FileTransformer delegate;
+
+    public GzipTransformer(FileTransformer delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void transform(ReadableByteChannel in, WritableByteChannel out) throws IOException {
+        GZIPInputStream gzIn = new GZIPInputStream(Channels.newInputStream(in), BUFFER_SIZE);
+        GZIPOutputStream gzOut = new GZIPOutputStream(Channels.newOutputStream(out), BUFFER_SIZE);
+        delegate.transform(Channels.newChannel(gzIn), Channels.newChannel(gzOut));
+        gzOut.finish();
+        gzOut.flush();
+    }
+}
@@ -0,0 +1,91 @@
+package de.skyrising.minecraft.debug;
+
+import de.skyrising.minecraft.deobf.Deobfuscator;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Deobfuscates the Java frames ({@code j}/{@code J} lines) of HotSpot {@code hs_err_pid*.log} files, which name
+ * methods with their descriptor: {@code J 1234 c2 abc.a(Lbcd;)V (56 bytes) @ 0x...}
+ */
+public class HsErrTransformer extends LineTransformer {
+    private final Deobfuscator deobfuscator;
+
+    public HsErrTransformer(Deobfuscator deobfuscator) {
+        super(64 * 1024);
+        this.deobfuscator = deobfuscator;
+    }
+
+    @Override
+    protected void transformLine(byte[] line, int off, int len) throws IOException {
+        if (len < 2 || (line[off] != 'j' && line[off] != 'J') || line[off + 1] != ' ') {
+            writeLine(line, off, len);
+            return;
+        }
+        String transformed = transformFrame(new String(line, off, len, StandardCharsets.UTF_8));
+        if (transformed == null) {
+            writeLine(line, off, len);
+        } else {
+            writeLine(transformed);
+        }
+    }
+
+    private String transformFrame(String line) {
+        int paren = line.indexOf('(');
+        if (paren < 0) return null;
+        int start = line.lastIndexOf(' ', paren) + 1;
+        int dot = line.lastIndexOf('.', paren);
+        if (dot < start) return null;
+        int descEnd = descriptorEnd(line, paren);
+        if (descEnd < 0) return null;
+        String owner = line.substring(start, dot).replace('.', '/');
+        String className = deobfuscator.mappings.deobfuscateClass(owner);
+        if (className == null) return null;
+        String method = line.substring(dot + 1, paren);
+        String descriptor = line.substring(paren, descEnd);
+        String mappedDescriptor = deobfuscateDescriptor(descriptor);
+        if (mappedDescriptor == null) return null;
+        String methodName = deobfuscator.deobfuscateMethod(owner, method, descriptor);
+        return line.substring(0, start) + className.replace('/', '.') + '.'
+                + (methodName == null ? method : methodName)
+                + mappedDescriptor
+                + line.substring(descEnd);
+    }
+
+    /**
+     * @return the end of the method descriptor starting at {@code start}, or -1 if it is malformed
+     */
+    private static int descriptorEnd(String line, int start) {
+        int close = line.indexOf(')', start);
+        if (close < 0) return -1;
+        int i = close + 1;
+        while (i < line.length() && line.charAt(i) == '[') i++;
+        if (i >= line.length()) return -1;
+        if (line.charAt(i) != 'L') return "VZBCSIJFD".indexOf(line.charAt(i)) >= 0 ? i + 1 : -1;
+        int semicolon = line.indexOf(';', i);
+        return semicolon < 0 ? -1 : semicolon + 1;
+    }
+
+    /**
+     * @param descriptor a descriptor whose return type was checked by {@link #descriptorEnd}
+     * @return the descriptor with mapped class names, or null if a parameter is malformed
+     */
+    private String deobfuscateDescriptor(String descriptor) {
+        StringBuilder sb = new StringBuilder(descriptor.length() + 32);
+        int close = descriptor.indexOf(')');
+        for (int i = 0; i < descriptor.length(); i++) {
+            char c = descriptor.charAt(i);
+            sb.append(c);
+            if (c != 'L') continue;
+            int end = descriptor.indexOf(';', i);
+            // a parameter type has to end before the return type
+            if (end < 0 || i < close && end > close) return null;
+            String name = descriptor.substring(i + 1, end);
+            String mapped = deobfuscator.mappings.deobfuscateClass(name);
+            sb.append(mapped == null ? name : mapped).append(';');
+            i = end;
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,77 @@
+package de.skyrising.minecraft.debug;
+
+import de.skyrising.util.Utf8LineReader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Base for transformers that rewrite text files line by line on the byte level, writing through a reusable buffer.
+ * Lines are terminated with {@code \n} in the output. Input lines are views into the reader's buffer and must not
+ * be retained.
+ */
+public abstract class LineTransformer implements FileTransformer {
+    private final ByteBuffer outBuf;
+    private WritableByteChannel out;
+
+    protected LineTransformer(int bufSize) {
+        this.outBuf = ByteBuffer.allocate(bufSize);
+    }
+
+    @Override
+    public void transform(ReadableByteChannel in, WritableByteChannel out) throws IOException {
+        this.out = out;
+        try {
+            Utf8LineReader reader = Utf8LineReader.open(in, 8192);
+            reader.forEachLine(this::transformLine);
+            flush();
+        } finally {
+            this.out = null;
+            outBuf.clear();
+        }
+    }
+
+    /**
+     * Transforms one line, which has to be written including its terminator
+     */
+    protected abstract void transformLine(byte[] line, int off, int len) throws IOException;
+
+    protected void writeLine(String line) throws IOException {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        writeLine(bytes, 0, bytes.length);
+    }
+
+    protected void writeLine(byte[] bytes, int off, int len) throws IOException {
+        write(bytes, off, len);
+        if (!outBuf.hasRemaining()) flush();
+        outBuf.put((byte) '\n');
+    }
+
+    private void write(byte[] bytes, int off, int len) throws IOException {
+        if (len > outBuf.remaining()) {
+            flush();
+            if (len > outBuf.capacity()) {
+                writeFully(ByteBuffer.wrap(bytes, off, len));
+                return;
+            }
+        }
+        outBuf.put(bytes, off, len);
+    }
+
+    private void flush() throws IOException {
+        outBuf.flip();
+        writeFully(outBuf);
+        outBuf.clear();
+    }
+
+    private void writeFully(ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) out.write(buf);
+    }
+
+    protected static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -3,15 +3,60 @@ package de.skyrising.minecraft.debug;
 import java.io.*;
 import java.net.URI;
 import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 
 public class Main {
-        public static void main(String[] args) throws IOException {
-        Path pathFrom = getPath(Paths.get(args[0]));
-        Path pathTo = getPath(Paths.get(args[1]));
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("server")) {
+            server(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("client")) {
+            client(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        List<String> paths = new ArrayList<>();
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean hardLinks = false;
+        boolean incremental = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-j": case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "-l": case "--link":
+                    hardLinks = true;
+                    break;
+                case "-i": case "--incremental":
+                    incremental = true;
+                    break;
+                default:
+                    paths.add(args[i]);
+            }
+        }
+        if (paths.size() != 2) {
+            System.err.println("Usage: [-j <threads>] [-l] [-i] <from> <to>");
+            System.err.println("       server [-j <threads>] [-p <port>] [-m <memory MiB>]");
+            System.err.println("       client [-p <port>] [-v <version> [-t <path>]] <from> <to> | client [-p <port>] --stop");
+            System.exit(1);
+        }
+        Path pathFrom = Paths.get(paths.get(0));
+        Path pathTo = Paths.get(paths.get(1));
+        if (!Files.isRegularFile(pathFrom) || Files.isDirectory(pathTo)) {
+            // zip to zip is streamed by the analyzer, anything else goes through the zip file system
+            pathFrom = getPath(pathFrom);
+            pathTo = getPath(pathTo);
+        }
         System.out.println(pathFrom.toUri() + " -> " + pathTo.toUri());
         try {
-            new DebugAnalyzer(pathFrom, pathTo).analyze();
+            DebugAnalyzer analyzer = new DebugAnalyzer(pathFrom, pathTo);
+            analyzer.setThreads(threads);
+            analyzer.setHardLinks(hardLinks);
+            analyzer.setIncremental(incremental);
+            analyzer.analyze();
         } finally {
             try {
                 pathFrom.getFileSystem().close();
@@ -22,7 +67,91 @@ public class Main {
         }
     }
 
-    private static Path getPath(Path path) throws IOException {
+    private static void server(String[] args) throws IOException {
+        int port = DebugServer.DEFAULT_PORT;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long memoryBudget = DeobfuscatorRegistry.DEFAULT_MEMORY_BUDGET;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-j": case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "-p": case "--port":
+                    port = Integer.parseInt(args[++i]);
+                    break;
+                case "-m": case "--memory":
+                    memoryBudget = Long.parseLong(args[++i]) << 20;
+                    break;
+                default:
+                    System.err.println("Usage: server [-j <threads>] [-p <port>] [-m <memory MiB>]");
+                    System.exit(1);
+            }
+        }
+        DebugServer server = new DebugServer(port);
+        server.setThreads(threads);
+        server.setMemoryBudget(memoryBudget);
+        server.run();
+    }
+
+    /**
+     * Transforms a zipped bundle, or a single text file when a version is given, through a running server.
+     * {@code -} reads the text from stdin or writes it to stdout.
+     */
+    private static void client(String[] args) throws IOException {
+        int port = DebugServer.DEFAULT_PORT;
+        String version = null;
+        String textPath = null;
+        boolean stop = false;
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-p": case "--port":
+                    port = Integer.parseInt(args[++i]);
+                    break;
+                case "-v": case "--version":
+                    version = args[++i];
+                    break;
+                case "-t": case "--type":
+                    textPath = args[++i];
+                    break;
+                case "--stop":
+                    stop = true;
+                    break;
+                default:
+                    paths.add(args[i]);
+            }
+        }
+        DebugClient client = new DebugClient(port);
+        if (stop) {
+            client.stop();
+            return;
+        }
+        if (paths.size() != 2) {
+            System.err.println("Usage: client [-p <port>] [-v <version> [-t <path>]] <from> <to> | client [-p <port>] --stop");
+            System.exit(1);
+        }
+        if (version == null) {
+            client.transformBundle(Paths.get(paths.get(0)), Paths.get(paths.get(1)));
+            return;
+        }
+        String from = paths.get(0), to = paths.get(1);
+        try (InputStream in = from.equals("-") ? System.in : Files.newInputStream(Paths.get(from));
+             OutputStream out = to.equals("-") ? new FilterOutputStream(System.out) {
+                 @Override
+                 public void write(byte[] b, int off, int len) throws IOException {
+                     out.write(b, off, len);
+                 }
+
+                 @Override
+                 public void close() throws IOException {
+                     flush();
+                 }
+             } : Files.newOutputStream(Paths.get(to))) {
+            client.transformText(version, textPath, in, out);
+        }
+    }
+
+    static Path getPath(Path path) throws IOException {
         if (Files.isDirectory(path)) return path;
         HashMap<String, String> env = new HashMap<>();
         env.put("create", "true");
@@ -1,31 +1,150 @@
 package de.skyrising.minecraft.debug;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
 public final class StackTraceUtil {
-    private static final Pattern STE_PATTERN = Pattern.compile("^\tat\\s+(?<class>(?:[\\w$\\/]+\\.)*[\\w$\\/]+)\\.(?<method>\\w+)\\((?<file>.+?)(?::(?<line>\\d+))?\\)$");
-
     private StackTraceUtil() {}
 
     public static StackTraceElement parse(String line) {
-        if (!line.startsWith("\tat")) return null;
-        Matcher match = STE_PATTERN.matcher(line);
-        if (!match.find()) return null;
-        String lineNumber = match.group("line");
-        if (lineNumber == null) {
-            return new StackTraceElement(
-                    match.group("class"),
-                    match.group("method"),
-                    null,
-                    -1
-            );
-        }
-        return new StackTraceElement(
-                match.group("class"),
-                match.group("method"),
-                match.group("file"),
-                Integer.parseInt(match.group("line"))
-        );
+        Frame frame = new Frame();
+        if (!parse(line, frame)) return null;
+        return frame.toStackTraceElement();
+    }
+
+    /**
+     * Parses a line of the form {@code \tat class.method(file:line)} without allocating
+     * @param line the line without line terminator
+     * @param frame receives the positions of the parts of the frame
+     * @return whether the line is a stack frame
+     */
+    public static boolean parse(CharSequence line, Frame frame) {
+        int end = line.length();
+        if (end > 0 && isLineTerminator(line.charAt(end - 1))) {
+            end--;
+            if (end > 0 && line.charAt(end) == '\n' && line.charAt(end - 1) == '\r') end--;
+        }
+        if (end < 3 || line.charAt(0) != '\t' || line.charAt(1) != 'a' || line.charAt(2) != 't') return false;
+        int i = 3;
+        while (i < end && isWhitespace(line.charAt(i))) i++;
+        if (i == 3) return false;
+        int classStart = i;
+        int lastDot = -1;
+        boolean emptySegment = true;
+        for (; i < end; i++) {
+            char c = line.charAt(i);
+            if (c == '(') break;
+            if (c == '.') {
+                if (emptySegment) return false;
+                lastDot = i;
+                emptySegment = true;
+                continue;
+            }
+            if (!isWordChar(c) && c != '$' && c != '/') return false;
+            emptySegment = false;
+        }
+        int open = i;
+        if (open == end || lastDot < 0 || emptySegment) return false;
+        for (int j = lastDot + 1; j < open; j++) {
+            if (!isWordChar(line.charAt(j))) return false;
+        }
+        int close = end - 1;
+        if (close <= open + 1 || line.charAt(close) != ')') return false;
+        for (int j = open + 1; j < close; j++) {
+            if (isLineTerminator(line.charAt(j))) return false;
+        }
+        int digits = close;
+        while (digits > open + 1 && isDigit(line.charAt(digits - 1))) digits--;
+        int fileEnd = close;
+        int lineNumber = -1;
+        if (digits < close && digits - 1 > open + 1 && line.charAt(digits - 1) == ':') {
+            long number = 0;
+            for (int j = digits; j < close; j++) {
+                number = number * 10 + (line.charAt(j) - '0');
+                if (number > Integer.MAX_VALUE) return false;
+            }
+            lineNumber = (int) number;
+            fileEnd = digits - 1;
+        }
+        frame.line = line;
+        frame.classStart = classStart;
+        frame.classEnd = lastDot;
+        frame.methodStart = lastDot + 1;
+        frame.methodEnd = open;
+        frame.fileStart = open + 1;
+        frame.fileEnd = fileEnd;
+        frame.lineNumber = lineNumber;
+        return true;
+    }
+
+    private static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || isDigit(c) || c == '_';
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == 0x0b || c == '\f' || c == '\r';
+    }
+
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == 0x2028 || c == 0x2029;
+    }
+
+    /**
+     * Reusable holder for the parts of a parsed stack frame, as offsets into the parsed line
+     */
+    public static final class Frame {
+        private CharSequence line;
+        private int classStart;
+        private int classEnd;
+        private int methodStart;
+        private int methodEnd;
+        private int fileStart;
+        private int fileEnd;
+        private int lineNumber;
+
+        public CharSequence getLine() {
+            return line;
+        }
+
+        public int getClassStart() {
+            return classStart;
+        }
+
+        public int getClassEnd() {
+            return classEnd;
+        }
+
+        public int getMethodStart() {
+            return methodStart;
+        }
+
+        public int getMethodEnd() {
+            return methodEnd;
+        }
+
+        public String getClassName() {
+            return line.subSequence(classStart, classEnd).toString();
+        }
+
+        public String getMethodName() {
+            return line.subSequence(methodStart, methodEnd).toString();
+        }
+
+        /**
+         * @return the source file, or {@code null} if the frame has no line number
+         */
+        public String getFileName() {
+            if (lineNumber < 0) return null;
+            return line.subSequence(fileStart, fileEnd).toString();
+        }
+
+        public int getLineNumber() {
+            return lineNumber;
+        }
+
+        public StackTraceElement toStackTraceElement() {
+            return new StackTraceElement(getClassName(), getMethodName(), getFileName(), lineNumber);
+        }
     }
 }
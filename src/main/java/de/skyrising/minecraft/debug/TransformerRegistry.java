@@ -0,0 +1,86 @@
+package de.skyrising.minecraft.debug;
+
+import de.skyrising.minecraft.deobf.Deobfuscator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Maps files of a bundle to the transformer for their type, the first matching registration wins.
+ * Paths are relative to the bundle root and use {@code /} as separator.
+ */
+public class TransformerRegistry {
+    private final List<Registration> registrations = new ArrayList<>();
+
+    public static TransformerRegistry createDefault() {
+        TransformerRegistry registry = new TransformerRegistry();
+        registry.register("hs_err", path -> fileName(path).startsWith("hs_err_pid") && path.endsWith(".log"), HsErrTransformer::new);
+        registry.register("log", path -> path.endsWith(".log"), CrashLogTransformer::new);
+        registry.register("log.gz", path -> path.endsWith(".log.gz"), d -> new GzipTransformer(new CrashLogTransformer(d)));
+        registry.register("crash-report", path -> path.endsWith(".txt") && parentName(path).equals("crash-reports"), CrashLogTransformer::new);
+        registry.register("example_crash", path -> fileName(path).equals("example_crash.txt"), CrashLogTransformer::new);
+        return registry;
+    }
+
+    /**
+     * Adds a transformer for a type of file, or replaces the registration of that type while keeping its priority
+     */
+    public TransformerRegistry register(String type, Predicate<String> matcher, Function<Deobfuscator, FileTransformer> factory) {
+        Registration registration = new Registration(type, matcher, factory);
+        for (int i = 0; i < registrations.size(); i++) {
+            if (registrations.get(i).type.equals(type)) {
+                registrations.set(i, registration);
+                return this;
+            }
+        }
+        registrations.add(registration);
+        return this;
+    }
+
+    /**
+     * @return the type the file was registered as, or {@code null} if it is copied unchanged
+     */
+    public String getType(String path) {
+        Registration registration = find(path);
+        return registration == null ? null : registration.type;
+    }
+
+    /**
+     * @return a new transformer for the file, or {@code null} if it should be copied unchanged
+     */
+    public FileTransformer get(String path, Deobfuscator deobfuscator) {
+        Registration registration = find(path);
+        return registration == null ? null : registration.factory.apply(deobfuscator);
+    }
+
+    private Registration find(String path) {
+        for (Registration registration : registrations) {
+            if (registration.matcher.test(path)) return registration;
+        }
+        return null;
+    }
+
+    private static String fileName(String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    private static String parentName(String path) {
+        int end = path.lastIndexOf('/');
+        if (end < 0) return "";
+        return path.substring(path.lastIndexOf('/', end - 1) + 1, end);
+    }
+
+    private static final class Registration {
+        final String type;
+        final Predicate<String> matcher;
+        final Function<Deobfuscator, FileTransformer> factory;
+
+        Registration(String type, Predicate<String> matcher, Function<Deobfuscator, FileTransformer> factory) {
+            this.type = type;
+            this.matcher = matcher;
+            this.factory = factory;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package de.skyrising.minecraft.deobf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Source of raw class files for {@link Deobfuscator}, classes are never loaded
+ */
+@FunctionalInterface
+public interface BytecodeProvider {
+    /**
+     * @param internalName the class name with {@code /} as separator
+     * @return the contents of the class file, or null if the class isn't available
+     */
+    byte[] getClassBytes(String internalName) throws IOException;
+
+    /**
+     * @return a provider reading class files as resources of the class loader
+     */
+    static BytecodeProvider of(ClassLoader classLoader) {
+        return internalName -> {
+            InputStream stream = classLoader.getResourceAsStream(internalName + ".class");
+            if (stream == null) return null;
+            try (InputStream in = stream) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buf = new byte[8192];
+                int n;
+                while ((n = in.read(buf)) >= 0) out.write(buf, 0, n);
+                return out.toByteArray();
+            }
+        };
+    }
+}
@@ -0,0 +1,342 @@
+package de.skyrising.minecraft.deobf;
+
+import com.google.common.primitives.UnsignedBytes;
+import it.unimi.dsi.fastutil.objects.Object2ObjectArrayMap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Persistent cache of the {@link ClassInfo} derived from class files, so classes don't have to be parsed with ASM
+ * on every run.
+ * <p>
+ * Layout (big endian): magic, version, entry count, entry offsets sorted by class name, entries.
+ * Strings are stored as an unsigned 16-bit length followed by UTF-8 bytes, {@code 0xffff} meaning {@code null}.
+ * Classes that weren't found aren't stored, since the index isn't keyed on the library jars that could provide them.
+ * <p>
+ * Every save writes a new generation {@code <name>.<generation>.idx} next to the older ones instead of replacing the
+ * file, which may still be mapped and can't be replaced on Windows then. Older generations are deleted when they
+ * aren't in use anymore.
+ */
+public final class ClassIndex {
+    public static final Path CACHE_DIR = Paths.get(System.getProperty("java.io.tmpdir"), "minecraft-debug-index");
+    private static final int MAGIC = 0x4d444349; // MDCI
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 12;
+    private static final int NULL_STRING = 0xffff;
+
+    private final Path file;
+    private final long generation;
+    private final ByteBuffer buf;
+    private final int count;
+    private final ConcurrentMap<String, ClassInfo> added = new ConcurrentHashMap<>();
+    private int savedCount;
+
+    private ClassIndex(Path file, long generation, ByteBuffer buf) {
+        this.file = file;
+        this.generation = generation;
+        this.buf = buf;
+        this.count = buf == null ? 0 : buf.getInt(8);
+    }
+
+    /**
+     * @param cacheDir the directory the indexes are kept in, usually {@link #CACHE_DIR}
+     */
+    public static ClassIndex open(Path cacheDir, String gameVersion, String hash) throws IOException {
+        return open(cacheDir.resolve(gameVersion + "-" + hash + ".idx"));
+    }
+
+    /**
+     * @param file the name of the index, the latest generation of it is opened
+     */
+    public static ClassIndex open(Path file) throws IOException {
+        List<Long> generations = generations(file);
+        if (generations.isEmpty()) return new ClassIndex(file, -1, null);
+        long generation = generations.get(generations.size() - 1);
+        Path data = generationFile(file, generation);
+        MappedByteBuffer buf;
+        try (FileChannel channel = FileChannel.open(data, StandardOpenOption.READ)) {
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (NoSuchFileException e) {
+            // replaced by a concurrent save
+            return open(file);
+        }
+        if (buf.limit() < HEADER_SIZE || buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION
+                || HEADER_SIZE + 4L * buf.getInt(8) > buf.limit()) {
+            System.out.println("Ignoring invalid class index " + data);
+            return new ClassIndex(file, generation, null);
+        }
+        deleteGenerations(file, generation);
+        return new ClassIndex(file, generation, buf);
+    }
+
+    static Path generationFile(Path file, long generation) {
+        return file.resolveSibling(stem(file) + "." + generation + ".idx");
+    }
+
+    private static String stem(Path file) {
+        String name = file.getFileName().toString();
+        return name.endsWith(".idx") ? name.substring(0, name.length() - 4) : name;
+    }
+
+    /**
+     * @return the generations of the index on disk in ascending order
+     */
+    private static List<Long> generations(Path file) throws IOException {
+        List<Long> generations = new ArrayList<>();
+        Path dir = file.toAbsolutePath().getParent();
+        if (!Files.isDirectory(dir)) return generations;
+        String prefix = stem(file) + ".";
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path f : files) {
+                String name = f.getFileName().toString();
+                if (!name.startsWith(prefix) || !name.endsWith(".idx")) continue;
+                try {
+                    generations.add(Long.parseLong(name.substring(prefix.length(), name.length() - 4)));
+                } catch (NumberFormatException ignored) {
+                    // another index whose name starts with this one
+                }
+            }
+        }
+        Collections.sort(generations);
+        return generations;
+    }
+
+    /**
+     * Deletes the generations older than the given one, those that are still mapped are left for a later call
+     */
+    private static void deleteGenerations(Path file, long before) throws IOException {
+        for (long generation : generations(file)) {
+            if (generation >= before) break;
+            try {
+                Files.deleteIfExists(generationFile(file, generation));
+            } catch (IOException e) {
+                // still mapped by this or another process
+            }
+        }
+    }
+
+    /**
+     * Hashes the size and modification time of the game jar together with the class path it is used with. A replaced
+     * jar gets a new time, and unlike its contents the attributes can be read without reading the whole jar.
+     * @param gameJar the version jar
+     * @param classPath all class path entries, used to detect library changes
+     * @return a short hex digest
+     */
+    public static String hash(Path gameJar, List<String> classPath) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (String entry : classPath) {
+            digest.update(entry.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+        }
+        BasicFileAttributes attrs = Files.readAttributes(gameJar, BasicFileAttributes.class);
+        ByteBuffer buf = ByteBuffer.allocate(16);
+        buf.putLong(attrs.size()).putLong(attrs.lastModifiedTime().toMillis());
+        digest.update(buf.array());
+        byte[] bytes = digest.digest();
+        StringBuilder sb = new StringBuilder(16);
+        for (int i = 0; i < 8; i++) sb.append(String.format("%02x", bytes[i]));
+        return sb.toString();
+    }
+
+    public int size() {
+        return count;
+    }
+
+    ClassInfo get(String className) {
+        if (buf == null) return null;
+        byte[] name = className.getBytes(StandardCharsets.UTF_8);
+        int lo = 0, hi = count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int offset = buf.getInt(HEADER_SIZE + 4 * mid);
+            int cmp = compareName(offset, name);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return readEntry(offset);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds a class to be saved, {@link ClassInfo#MISSING} is ignored
+     */
+    void put(String className, ClassInfo info) {
+        if (info != ClassInfo.MISSING) added.put(className, info);
+    }
+
+    /**
+     * Writes the existing entries and all classes added since opening to a new index file.
+     * Does nothing if no class was added since the last save.
+     */
+    public synchronized void save() throws IOException {
+        int addedCount = added.size();
+        if (addedCount == savedCount) return;
+        Map<byte[], byte[]> entries = new TreeMap<>(UnsignedBytes.lexicographicalComparator());
+        for (int i = 0; i < count; i++) {
+            int offset = buf.getInt(HEADER_SIZE + 4 * i);
+            int end = i + 1 < count ? buf.getInt(HEADER_SIZE + 4 * (i + 1)) : buf.limit();
+            ByteBuffer entry = buf.duplicate();
+            entry.position(offset);
+            byte[] bytes = new byte[end - offset];
+            entry.get(bytes);
+            entries.put(readBytes(offset), bytes);
+        }
+        for (Map.Entry<String, ClassInfo> e : added.entrySet()) {
+            byte[] name = e.getKey().getBytes(StandardCharsets.UTF_8);
+            entries.put(name, writeEntry(e.getKey(), e.getValue()));
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(entries.size());
+        int offset = HEADER_SIZE + 4 * entries.size();
+        for (byte[] entry : entries.values()) {
+            out.writeInt(offset);
+            offset += entry.length;
+        }
+        for (byte[] entry : entries.values()) out.write(entry);
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        List<Long> generations = generations(file);
+        long next = Math.max(generation, generations.isEmpty() ? -1 : generations.get(generations.size() - 1)) + 1;
+        Path target = generationFile(file, next);
+        Path tmp = Files.createTempFile(target.toAbsolutePath().getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            Files.write(tmp, bytes.toByteArray());
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        System.out.printf("Saved %d classes to %s\n", entries.size(), target);
+        savedCount = addedCount;
+        deleteGenerations(file, next);
+    }
+
+    private int compareName(int offset, byte[] name) {
+        int len = buf.getShort(offset) & 0xffff;
+        int min = Math.min(len, name.length);
+        for (int i = 0; i < min; i++) {
+            int cmp = (buf.get(offset + 2 + i) & 0xff) - (name[i] & 0xff);
+            if (cmp != 0) return cmp;
+        }
+        return len - name.length;
+    }
+
+    private byte[] readBytes(int offset) {
+        int len = buf.getShort(offset) & 0xffff;
+        byte[] bytes = new byte[len];
+        for (int i = 0; i < len; i++) bytes[i] = buf.get(offset + 2 + i);
+        return bytes;
+    }
+
+    private ClassInfo readEntry(int offset) {
+        ByteBuffer in = buf.duplicate();
+        in.position(offset);
+        skipString(in);
+        String superName = readString(in);
+        String[] interfaces = new String[in.getShort() & 0xffff];
+        for (int i = 0; i < interfaces.length; i++) interfaces[i] = readString(in);
+        Object[] lines = new Object[in.getInt()];
+        int used = in.getInt();
+        for (int i = 0; i < used; i++) {
+            int line = in.getInt();
+            int methods = in.getShort() & 0xffff;
+            if (methods == 0) {
+                lines[line] = readString(in);
+                continue;
+            }
+            Map<String, String> descs = new Object2ObjectArrayMap<>();
+            for (int j = 0; j < methods; j++) {
+                String name = readString(in);
+                descs.put(name, readString(in));
+            }
+            lines[line] = descs;
+        }
+        return new ClassInfo(superName, interfaces, lines);
+    }
+
+    private static void skipString(ByteBuffer in) {
+        int len = in.getShort() & 0xffff;
+        if (len != NULL_STRING) in.position(in.position() + len);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int len = in.getShort() & 0xffff;
+        if (len == NULL_STRING) return null;
+        byte[] bytes = new byte[len];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] writeEntry(String className, ClassInfo info) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            writeString(out, className);
+            writeString(out, info.superName);
+            out.writeShort(info.interfaces.length);
+            for (String name : info.interfaces) writeString(out, name);
+            Object[] lines = info.lines;
+            out.writeInt(lines.length);
+            int used = 0;
+            for (Object line : lines) if (line != null) used++;
+            out.writeInt(used);
+            for (int i = 0; i < lines.length; i++) {
+                Object line = lines[i];
+                if (line == null) continue;
+                out.writeInt(i);
+                if (line instanceof String) {
+                    out.writeShort(0);
+                    writeString(out, (String) line);
+                    continue;
+                }
+                Map<String, String> descs = (Map<String, String>) line;
+                out.writeShort(descs.size());
+                for (Map.Entry<String, String> e : descs.entrySet()) {
+                    writeString(out, e.getKey());
+                    writeString(out, e.getValue());
+                }
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeShort(NULL_STRING);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -0,0 +1,30 @@
+package de.skyrising.minecraft.deobf;
+
+import java.util.Map;
+
+final class ClassInfo {
+    static final String[] NO_INTERFACES = new String[0];
+    static final ClassInfo MISSING = new ClassInfo(null, NO_INTERFACES, new Object[0]);
+
+    final String superName;
+    final String[] interfaces;
+    /**
+     * Indexed by line number, either the descriptor of the only method on that line
+     * or a {@code Map<String, String>} of method name to descriptor
+     */
+    final Object[] lines;
+
+    ClassInfo(String superName, String[] interfaces, Object[] lines) {
+        this.superName = superName;
+        this.interfaces = interfaces;
+        this.lines = lines;
+    }
+
+    String getMethodDescriptor(String methodName, int lineNumber) {
+        if (lineNumber < 0 || lineNumber >= lines.length) return null;
+        Object lineInfo = lines[lineNumber];
+        if (lineInfo == null) return null;
+        if (lineInfo instanceof String) return (String) lineInfo;
+        return ((Map<String, String>) lineInfo).get(methodName);
+    }
+}
@@ -0,0 +1,430 @@
+package de.skyrising.minecraft.deobf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Precompiled binary form of {@link TinyMappings} that is memory-mapped and queried in place.
+ * <p>
+ * Layout (big endian, all tables are {@code int[namespaces][count]}):
+ * <pre>
+ * header:  magic, version, namespaces, classes, methods, fields, pool offset
+ * tables:  namespace names,
+ *          class names, classes sorted by name,
+ *          method owners, names, descriptors, methods sorted by (owner, name, descriptor),
+ *          field owners, names, fields sorted by (owner, name)
+ * pool:    strings as unsigned 16-bit length followed by UTF-8 bytes
+ * </pre>
+ * String references are offsets into the pool, sort order is unsigned lexicographic over the UTF-8 bytes.
+ */
+public class CompiledMappings implements Mappings {
+    private static final int MAGIC = 0x4d444d50; // MDMP
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 28;
+    private static final int NO_STRING = -1;
+
+    private final ByteBuffer buf;
+    private final int namespaceCount;
+    private final int classCount;
+    private final int methodCount;
+    private final int fieldCount;
+    private final int pool;
+    private final int namespaceTable;
+    private final int classNames;
+    private final int classSorted;
+    private final int methodOwners;
+    private final int methodNames;
+    private final int methodDescriptors;
+    private final int methodSorted;
+    private final int fieldOwners;
+    private final int fieldNames;
+    private final int fieldSorted;
+    // key columns of the sorted tables
+    private final int[] classKey;
+    private final int[] methodKey;
+    private final int[] methodNameKey;
+    private final int[] fieldKey;
+    private String version;
+    private int namespaceFrom = 0;
+    private int namespaceTo;
+
+    private CompiledMappings(ByteBuffer buf) throws IOException {
+        if (buf.limit() < HEADER_SIZE || buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION) {
+            throw new IOException("Invalid compiled mappings");
+        }
+        this.buf = buf;
+        namespaceCount = buf.getInt(8);
+        classCount = buf.getInt(12);
+        methodCount = buf.getInt(16);
+        fieldCount = buf.getInt(20);
+        pool = buf.getInt(24);
+        namespaceTable = HEADER_SIZE;
+        classNames = namespaceTable + 4 * namespaceCount;
+        classSorted = classNames + 4 * namespaceCount * classCount;
+        methodOwners = classSorted + 4 * namespaceCount * classCount;
+        methodNames = methodOwners + 4 * namespaceCount * methodCount;
+        methodDescriptors = methodNames + 4 * namespaceCount * methodCount;
+        methodSorted = methodDescriptors + 4 * namespaceCount * methodCount;
+        fieldOwners = methodSorted + 4 * namespaceCount * methodCount;
+        fieldNames = fieldOwners + 4 * namespaceCount * fieldCount;
+        fieldSorted = fieldNames + 4 * namespaceCount * fieldCount;
+        if (fieldSorted + 4 * namespaceCount * fieldCount != pool || pool > buf.limit()) {
+            throw new IOException("Invalid compiled mappings");
+        }
+        classKey = new int[] {classNames};
+        methodKey = new int[] {methodOwners, methodNames, methodDescriptors};
+        methodNameKey = new int[] {methodOwners, methodNames};
+        fieldKey = new int[] {fieldOwners, fieldNames};
+        namespaceTo = namespaceCount - 1;
+    }
+
+    public static CompiledMappings open(Path file) throws IOException {
+        long start = System.nanoTime();
+        ByteBuffer buf;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        CompiledMappings mappings = new CompiledMappings(buf);
+        System.out.printf("Opened compiled mappings in %.3fms: %d classes, %d methods, %d fields\n",
+                (System.nanoTime() - start) / 1e6, mappings.classCount, mappings.methodCount, mappings.fieldCount);
+        return mappings;
+    }
+
+    public static void write(TinyMappings mappings, Path file) throws IOException {
+        mappings.prebuild(ForkJoinPool.commonPool());
+        int ns = mappings.getNamespaceCount();
+        int classes = mappings.getClassCount();
+        int methods = mappings.getMethodCount();
+        int fields = mappings.getFieldCount();
+        StringTable strings = new StringTable();
+        int[] namespaces = new int[ns];
+        int[][] classNames = new int[ns][classes];
+        int[][] methodOwners = new int[ns][methods];
+        int[][] methodNames = new int[ns][methods];
+        int[][] methodDescriptors = new int[ns][methods];
+        int[][] fieldOwners = new int[ns][fields];
+        int[][] fieldNames = new int[ns][fields];
+        for (int i = 0; i < ns; i++) {
+            namespaces[i] = strings.add(mappings.getNamespace(i));
+            for (int j = 0; j < classes; j++) classNames[i][j] = strings.add(mappings.getClassName(i, j));
+            for (int j = 0; j < methods; j++) {
+                methodOwners[i][j] = strings.add(mappings.getMethodOwner(i, j));
+                methodNames[i][j] = strings.add(mappings.getMethodName(i, j));
+                methodDescriptors[i][j] = strings.add(mappings.getMethodDescriptor(i, j));
+            }
+            for (int j = 0; j < fields; j++) {
+                fieldOwners[i][j] = strings.add(mappings.getFieldOwner(i, j));
+                fieldNames[i][j] = strings.add(mappings.getFieldName(i, j));
+            }
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        int poolOffset = HEADER_SIZE + 4 * (ns + ns * (2 * classes + 4 * methods + 3 * fields));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(ns);
+        out.writeInt(classes);
+        out.writeInt(methods);
+        out.writeInt(fields);
+        out.writeInt(poolOffset);
+        writeInts(out, namespaces);
+        for (int[] table : classNames) writeInts(out, table);
+        for (int i = 0; i < ns; i++) writeInts(out, sort(strings, classes, classNames[i]));
+        for (int[] table : methodOwners) writeInts(out, table);
+        for (int[] table : methodNames) writeInts(out, table);
+        for (int[] table : methodDescriptors) writeInts(out, table);
+        for (int i = 0; i < ns; i++) writeInts(out, sort(strings, methods, methodOwners[i], methodNames[i], methodDescriptors[i]));
+        for (int[] table : fieldOwners) writeInts(out, table);
+        for (int[] table : fieldNames) writeInts(out, table);
+        for (int i = 0; i < ns; i++) writeInts(out, sort(strings, fields, fieldOwners[i], fieldNames[i]));
+        strings.bytes.writeTo(out);
+        Files.createDirectories(file.getParent());
+        Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            Files.write(tmp, bytes.toByteArray());
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        System.out.println("Compiled mappings to " + file);
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        for (int value : values) out.writeInt(value);
+    }
+
+    /**
+     * Sorts the indexes of a table by its key columns, ties are broken by index so the last duplicate wins lookups
+     * like it does in {@link TinyMappings}
+     */
+    private static int[] sort(StringTable strings, int count, int[]... columns) {
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> {
+            for (int[] column : columns) {
+                int cmp = strings.compare(column[a], column[b]);
+                if (cmp != 0) return cmp;
+            }
+            return Integer.compare(a, b);
+        });
+        int[] sorted = new int[count];
+        for (int i = 0; i < count; i++) sorted[i] = order[i];
+        return sorted;
+    }
+
+    public void setNamespaceFrom(String namespaceFrom) {
+        this.namespaceFrom = getNamespaceIndex(namespaceFrom);
+    }
+
+    public void setNamespaceTo(String namespaceTo) {
+        this.namespaceTo = getNamespaceIndex(namespaceTo);
+    }
+
+    private int getNamespaceIndex(String namespace) {
+        for (int i = 0; i < namespaceCount; i++) {
+            if (namespace.equals(readString(buf.getInt(namespaceTable + 4 * i)))) return i;
+        }
+        throw new IllegalArgumentException(namespace);
+    }
+
+    private int table(int table, int namespace, int count, int index) {
+        return buf.getInt(table + 4 * (namespace * count + index));
+    }
+
+    private String readString(int ref) {
+        if (ref == NO_STRING) return null;
+        int offset = pool + ref;
+        int len = buf.getShort(offset) & 0xffff;
+        byte[] bytes = new byte[len];
+        for (int i = 0; i < len; i++) bytes[i] = buf.get(offset + 2 + i);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Compares a pooled string with a key in the order of the pool without encoding the key: unsigned UTF-8 byte
+     * order is code point order, so the pooled bytes are decoded and compared against the code points of the key
+     */
+    private int compare(int ref, String key) {
+        if (ref == NO_STRING) return -1;
+        int pos = pool + ref + 2;
+        int end = pos + (buf.getShort(pos - 2) & 0xffff);
+        int i = 0, len = key.length();
+        while (pos < end && i < len) {
+            int b = buf.get(pos) & 0xff;
+            char c = key.charAt(i);
+            if (b < 0x80 && c < 0x80) {
+                if (b != c) return b - c;
+                pos++;
+                i++;
+                continue;
+            }
+            int cp;
+            if (b < 0x80) {
+                cp = b;
+                pos++;
+            } else if (b < 0xe0) {
+                cp = (b & 0x1f) << 6 | buf.get(pos + 1) & 0x3f;
+                pos += 2;
+            } else if (b < 0xf0) {
+                cp = (b & 0x0f) << 12 | (buf.get(pos + 1) & 0x3f) << 6 | buf.get(pos + 2) & 0x3f;
+                pos += 3;
+            } else {
+                cp = (b & 0x07) << 18 | (buf.get(pos + 1) & 0x3f) << 12 | (buf.get(pos + 2) & 0x3f) << 6
+                        | buf.get(pos + 3) & 0x3f;
+                pos += 4;
+            }
+            int keyCp = key.codePointAt(i);
+            if (cp != keyCp) return cp - keyCp;
+            i += Character.charCount(keyCp);
+        }
+        if (pos < end) return 1;
+        return i < len ? -1 : 0;
+    }
+
+    /**
+     * Compares an entry with a key of up to three strings, one for each column
+     */
+    private int compareEntry(int index, int namespace, int count, int[] columns, String a, String b, String c) {
+        int cmp = compare(table(columns[0], namespace, count, index), a);
+        if (cmp != 0 || columns.length == 1) return cmp;
+        cmp = compare(table(columns[1], namespace, count, index), b);
+        if (cmp != 0 || columns.length == 2) return cmp;
+        return compare(table(columns[2], namespace, count, index), c);
+    }
+
+    /**
+     * @return the first position in the sorted table whose entry is not less than the key
+     */
+    private int lowerBound(int sorted, int namespace, int count, int[] columns, String a, String b, String c) {
+        int lo = 0, hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compareEntry(table(sorted, namespace, count, mid), namespace, count, columns, a, b, c) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * @return the first position in the sorted table whose entry is greater than the key
+     */
+    private int upperBound(int sorted, int namespace, int count, int[] columns, String a, String b, String c) {
+        int lo = 0, hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compareEntry(table(sorted, namespace, count, mid), namespace, count, columns, a, b, c) <= 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private int find(int sorted, int namespace, int count, int[] columns, String a, String b, String c) {
+        int pos = upperBound(sorted, namespace, count, columns, a, b, c) - 1;
+        if (pos < 0) return -1;
+        int index = table(sorted, namespace, count, pos);
+        return compareEntry(index, namespace, count, columns, a, b, c) == 0 ? index : -1;
+    }
+
+    private String renameClass(String className, int nsFrom, int nsTo) {
+        if (className == null) return null;
+        int index = find(classSorted, nsFrom, classCount, classKey, className, null, null);
+        if (index < 0) return null;
+        return readString(table(classNames, nsTo, classCount, index));
+    }
+
+    @Override
+    public String getVersion() {
+        return version;
+    }
+
+    public void setVersion(String version) {
+        this.version = version;
+    }
+
+    /**
+     * The mapped file, which is resident in the page cache while the mappings are used
+     */
+    @Override
+    public long estimateSize() {
+        return buf.capacity();
+    }
+
+    @Override
+    public String deobfuscateClass(String className) {
+        return renameClass(className, namespaceFrom, namespaceTo);
+    }
+
+    @Override
+    public String obfuscateClass(String className) {
+        return renameClass(className, namespaceTo, namespaceFrom);
+    }
+
+    private String renameMethod(String className, String method, String signature, int nsFrom, int nsTo) {
+        if (className == null || method == null || signature == null) return null;
+        int index = find(methodSorted, nsFrom, methodCount, methodKey, className, method, signature);
+        if (index < 0) return null;
+        return readString(table(methodNames, nsTo, methodCount, index));
+    }
+
+    @Override
+    public String deobfuscateMethod(String className, String method, String signature) {
+        return renameMethod(className, method, signature, namespaceFrom, namespaceTo);
+    }
+
+    @Override
+    public String obfuscateMethod(String className, String method, String signature) {
+        return renameMethod(className, method, signature, namespaceTo, namespaceFrom);
+    }
+
+    private List<String> getMethods(String className, String method, int namespace) {
+        int from = lowerBound(methodSorted, namespace, methodCount, methodNameKey, className, method, null);
+        int to = upperBound(methodSorted, namespace, methodCount, methodNameKey, className, method, null);
+        List<String> descriptors = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            int index = table(methodSorted, namespace, methodCount, i);
+            descriptors.add(readString(table(methodDescriptors, namespace, methodCount, index)));
+        }
+        return descriptors;
+    }
+
+    @Override
+    public Collection<String> getObfuscatedMethods(String className, String method) {
+        return getMethods(className, method, namespaceFrom);
+    }
+
+    @Override
+    public Collection<String> getDeobfuscatedMethods(String className, String method) {
+        return getMethods(className, method, namespaceTo);
+    }
+
+    private String renameField(String className, String field, int nsFrom, int nsTo) {
+        if (className == null || field == null) return null;
+        int index = find(fieldSorted, nsFrom, fieldCount, fieldKey, className, field, null);
+        if (index < 0) return null;
+        return readString(table(fieldNames, nsTo, fieldCount, index));
+    }
+
+    @Override
+    public String deobfuscateField(String className, String fieldName) {
+        return renameField(className, fieldName, namespaceFrom, namespaceTo);
+    }
+
+    @Override
+    public String obfuscateField(String className, String fieldName) {
+        return renameField(className, fieldName, namespaceTo, namespaceFrom);
+    }
+
+    /**
+     * Builds the pool section of the file, strings are referenced by their byte offset in it
+     */
+    private static final class StringTable {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final Map<String, Integer> offsets = new HashMap<>();
+        final Map<Integer, byte[]> values = new HashMap<>();
+
+        int add(String s) {
+            if (s == null) return NO_STRING;
+            Integer offset = offsets.get(s);
+            if (offset != null) return offset;
+            byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+            if (utf8.length > 0xffff) throw new IllegalArgumentException("String too long: " + s.length());
+            offset = bytes.size();
+            bytes.write(utf8.length >>> 8);
+            bytes.write(utf8.length);
+            bytes.write(utf8, 0, utf8.length);
+            offsets.put(s, offset);
+            values.put(offset, utf8);
+            return offset;
+        }
+
+        int compare(int a, int b) {
+            if (a == b) return 0;
+            if (a == NO_STRING) return -1;
+            if (b == NO_STRING) return 1;
+            byte[] x = values.get(a);
+            byte[] y = values.get(b);
+            int min = Math.min(x.length, y.length);
+            for (int i = 0; i < min; i++) {
+                int cmp = (x[i] & 0xff) - (y[i] & 0xff);
+                if (cmp != 0) return cmp;
+            }
+            return x.length - y.length;
+        }
+    }
+}
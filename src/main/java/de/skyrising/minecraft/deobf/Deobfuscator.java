@@ -1,27 +1,102 @@
 package de.skyrising.minecraft.deobf;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import it.unimi.dsi.fastutil.objects.Object2ObjectArrayMap;
 import org.objectweb.asm.*;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.UncheckedIOException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
 
 public class Deobfuscator {
+    public static final int DEFAULT_FRAME_CACHE_SIZE = 4096;
+    public static final int CLASS_CACHE_SIZE = 8192;
+    public static final int METHOD_CACHE_SIZE = 32768;
+    // rough retained sizes of a cache entry in bytes, used to estimate the memory of full caches
+    private static final int CLASS_INFO_SIZE = 1024;
+    private static final int METHOD_ENTRY_SIZE = 200;
+    private static final int FRAME_ENTRY_SIZE = 250;
+    private static final StackTraceElement UNMAPPED = new StackTraceElement("", "", null, -1);
+    private static final String NOT_FOUND = new String("<not found>");
     public final Mappings mappings;
-    private ClassLoader classLoader;
-    private Set<String> classesParsed = new HashSet<>();
-    private Map<String, Object[]> classLinesDescMap = new HashMap<>();
-    private Map<String, String> superClassMap = new HashMap<>();
-    private Map<String, String[]> interfaceMap = new HashMap<>();
+    private final BytecodeProvider bytecode;
+    private final ClassIndex index;
+    private final Cache<String, ClassInfo> classes = CacheBuilder.newBuilder().maximumSize(CLASS_CACHE_SIZE).build();
+    private final int frameCacheSize;
+    private final Cache<FrameKey, StackTraceElement> frameCache;
+    private final Cache<MethodKey, String> resolvedMethods = CacheBuilder.newBuilder().maximumSize(METHOD_CACHE_SIZE).build();
 
     public Deobfuscator(Mappings mappings, ClassLoader classLoader) {
+        this(mappings, classLoader, null);
+    }
+
+    public Deobfuscator(Mappings mappings, ClassLoader classLoader, ClassIndex index) {
+        this(mappings, classLoader, index, DEFAULT_FRAME_CACHE_SIZE);
+    }
+
+    public Deobfuscator(Mappings mappings, ClassLoader classLoader, ClassIndex index, int frameCacheSize) {
+        this(mappings, BytecodeProvider.of(classLoader), index, frameCacheSize);
+    }
+
+    public Deobfuscator(Mappings mappings, BytecodeProvider bytecode, ClassIndex index) {
+        this(mappings, bytecode, index, DEFAULT_FRAME_CACHE_SIZE);
+    }
+
+    public Deobfuscator(Mappings mappings, BytecodeProvider bytecode, ClassIndex index, int frameCacheSize) {
         this.mappings = mappings;
-        this.classLoader = classLoader;
+        this.bytecode = bytecode;
+        this.index = index;
+        this.frameCacheSize = frameCacheSize;
+        this.frameCache = CacheBuilder.newBuilder().maximumSize(frameCacheSize).recordStats().build();
+    }
+
+    /**
+     * Estimates the memory this deobfuscator can retain: the mappings, the caches when they are full, and an entry in
+     * the class path index and class index for every class on a {@link JarClassPath}
+     *
+     * @return the estimated size in bytes
+     */
+    public long estimateSize() {
+        long size = mappings.estimateSize();
+        size += (long) CLASS_CACHE_SIZE * CLASS_INFO_SIZE + (long) METHOD_CACHE_SIZE * METHOD_ENTRY_SIZE + (long) frameCacheSize * FRAME_ENTRY_SIZE;
+        if (bytecode instanceof JarClassPath) {
+            long classCount = ((JarClassPath) bytecode).estimateClassCount();
+            size += classCount * (JarClassPath.ENTRY_SIZE + (index != null ? CLASS_INFO_SIZE : 0));
+        }
+        return size;
+    }
+
+    /**
+     * Persists the classes added to the class index, if there is one
+     */
+    public void saveIndex() throws IOException {
+        if (index != null) index.save();
     }
 
+    public CacheStats getFrameCacheStats() {
+        return frameCache.stats();
+    }
+
+    /**
+     * Deobfuscates a stack frame, frames with the same class, method and line share the result
+     * @return the deobfuscated frame, or {@code ste} itself if its class isn't mapped
+     */
     public StackTraceElement deobfuscate(StackTraceElement ste) {
+        FrameKey key = new FrameKey(ste.getClassName(), ste.getMethodName(), ste.getLineNumber());
+        StackTraceElement cached = frameCache.getIfPresent(key);
+        if (cached == null) {
+            cached = deobfuscateFrame(ste);
+            frameCache.put(key, cached == ste ? UNMAPPED : cached);
+        }
+        return cached == UNMAPPED ? ste : cached;
+    }
+
+    private StackTraceElement deobfuscateFrame(StackTraceElement ste) {
         String obfClassName = ste.getClassName().replace('.', '/');
         String suffix = "";
         if (obfClassName.contains("$Lambda$")) {
@@ -48,32 +123,39 @@ public class Deobfuscator {
 
     private String findMethod(StackTraceElement ste) {
         String internalClassName = ste.getClassName().replace('.', '/');
-        if (!classesParsed.contains(internalClassName)) this.parseClass(internalClassName);
-        Object[] lines = classLinesDescMap.get(internalClassName);
-        int lineNumber = ste.getLineNumber();
-        if (lines == null || lineNumber >= lines.length) return null;
-        Object lineInfo = lines[lineNumber];
-        if (lineInfo == null) return null;
-        if (lineInfo instanceof String) return (String) lineInfo;
-        return ((Map<String, String>) lineInfo).get(ste.getMethodName());
-    }
-
-    private void parseClass(String internalClassName) {
-        classesParsed.add(internalClassName);
-        String fileName = internalClassName + ".class";
-        InputStream classBytesStream = classLoader.getResourceAsStream(fileName);
-        if (classBytesStream == null) return;
+        return getClassInfo(internalClassName).getMethodDescriptor(ste.getMethodName(), ste.getLineNumber());
+    }
+
+    private ClassInfo getClassInfo(String internalClassName) {
+        ClassInfo info = classes.getIfPresent(internalClassName);
+        if (info != null) return info;
         try {
+            return classes.get(internalClassName, () -> loadClassInfo(internalClassName));
+        } catch (ExecutionException | UncheckedExecutionException | ExecutionError e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private ClassInfo loadClassInfo(String internalClassName) {
+        if (index == null) return parseClass(internalClassName);
+        ClassInfo info = index.get(internalClassName);
+        if (info != null) return info;
+        info = parseClass(internalClassName);
+        index.put(internalClassName, info);
+        return info;
+    }
+
+    private ClassInfo parseClass(String internalClassName) {
+        try {
+            byte[] classBytes = bytecode.getClassBytes(internalClassName);
+            if (classBytes == null) return ClassInfo.MISSING;
             List<Object> linesDesc = new ArrayList<>();
             List<String> linesName = new ArrayList<>();
-            ClassReader cr = new ClassReader(classBytesStream);
+            ClassReader cr = new ClassReader(classBytes);
             cr.accept(new ClassVisitor(Opcodes.ASM7) {
-                @Override
-                public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
-                    superClassMap.put(name, superName);
-                    interfaceMap.put(name, interfaces);
-                }
-
                 @Override
                 public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
                     return new MethodVisitor(Opcodes.ASM7) {
@@ -99,29 +181,88 @@ public class Deobfuscator {
                     };
                 }
             }, ClassReader.SKIP_FRAMES);
-            classLinesDescMap.put(internalClassName, linesDesc.toArray());
+            return new ClassInfo(cr.getSuperName(), cr.getInterfaces(), linesDesc.toArray());
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
     }
 
-    private String deobfuscateMethod(String className, String method, String signature) {
+    /**
+     * Deobfuscates a method, looking through super classes and interfaces if it isn't mapped in its own class.
+     * Results are remembered, including methods that couldn't be resolved.
+     */
+    public String deobfuscateMethod(String className, String method, String signature) {
+        MethodKey key = new MethodKey(className, method, signature);
+        String resolved = resolvedMethods.getIfPresent(key);
+        if (resolved == null) {
+            resolved = resolveMethod(className, method, signature);
+            resolvedMethods.put(key, resolved == null ? NOT_FOUND : resolved);
+            return resolved;
+        }
+        return resolved == NOT_FOUND ? null : resolved;
+    }
+
+    private String resolveMethod(String className, String method, String signature) {
         // System.out.println(className + "." + method + signature);
         String deobfed = mappings.deobfuscateMethod(className, method, signature);
         if (deobfed != null) return deobfed;
-        if (!classesParsed.contains(className)) this.parseClass(className);
-        String superClass = superClassMap.get(className);
-        if (superClass != null) {
-            String superMethod = deobfuscateMethod(superClass, method, signature);
+        ClassInfo info = getClassInfo(className);
+        if (info.superName != null) {
+            String superMethod = deobfuscateMethod(info.superName, method, signature);
             if (superMethod != null) return superMethod;
         }
-        String[] interfaces = interfaceMap.get(className);
-        if (interfaces != null) {
-            for (String interfaceName : interfaces) {
-                String interfaceMethod = deobfuscateMethod(interfaceName, method, signature);
-                if (interfaceMethod != null) return interfaceMethod;
-            }
+        for (String interfaceName : info.interfaces) {
+            String interfaceMethod = deobfuscateMethod(interfaceName, method, signature);
+            if (interfaceMethod != null) return interfaceMethod;
         }
         return null;
     }
+
+    private static final class FrameKey {
+        final String className;
+        final String methodName;
+        final int lineNumber;
+
+        FrameKey(String className, String methodName, int lineNumber) {
+            this.className = className;
+            this.methodName = methodName;
+            this.lineNumber = lineNumber;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof FrameKey)) return false;
+            FrameKey k = (FrameKey) obj;
+            return lineNumber == k.lineNumber && className.equals(k.className) && methodName.equals(k.methodName);
+        }
+
+        @Override
+        public int hashCode() {
+            return (className.hashCode() * 31 + methodName.hashCode()) * 31 + lineNumber;
+        }
+    }
+
+    private static final class MethodKey {
+        final String owner;
+        final String name;
+        final String descriptor;
+
+        MethodKey(String owner, String name, String descriptor) {
+            this.owner = owner;
+            this.name = name;
+            this.descriptor = descriptor;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof MethodKey)) return false;
+            MethodKey k = (MethodKey) obj;
+            return owner.equals(k.owner) && name.equals(k.name) && Objects.equals(descriptor, k.descriptor);
+        }
+
+        @Override
+        public int hashCode() {
+            return (Objects.hashCode(descriptor) * 31 + name.hashCode()) * 31 + owner.hashCode();
+        }
+    }
 }
@@ -0,0 +1,340 @@
+package de.skyrising.minecraft.deobf;
+
+import de.skyrising.util.ZipIndex;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.stream.Collectors;
+
+/**
+ * Reads class files from a list of jars through a single index from class file name to jar entry, so a lookup doesn't
+ * search the jars one after another like {@link java.net.URLClassLoader} does.
+ * <p>
+ * The jars are only opened and indexed on the first lookup, which never happens if the {@link ClassIndex} already
+ * knows every class. Their central directories are read and the jars mapped into memory, after which only jars too
+ * large to map keep a file open. Like with a class loader the first jar containing a class wins. Safe for concurrent
+ * use, so it can be shared by every request for a game version.
+ */
+public final class JarClassPath implements BytecodeProvider, Closeable {
+    // rough retained size of an indexed class in bytes: the zip entry, its name and the map entry
+    static final int ENTRY_SIZE = 250;
+    // compressed class files average about this size, used to estimate the class count of jars not indexed yet
+    private static final int AVERAGE_CLASS_SIZE = 2048;
+    private final List<Path> jars;
+    private final Path root;
+    private final Path prunedFile;
+    private final FutureTask<Map<String, Location>> index = new FutureTask<>(this::buildIndex);
+    private final List<ZipIndex> opened = Collections.synchronizedList(new ArrayList<>());
+    private volatile CompletableFuture<Void> pruning = CompletableFuture.completedFuture(null);
+    private volatile boolean closed;
+
+    public JarClassPath(List<Path> jars) {
+        this(jars, null, null);
+    }
+
+    /**
+     * Prunes the class path to the jars that contain the classes of {@code root} or one of their supertypes, which
+     * are the only classes the deobfuscator looks up. The pruned class path is determined from all jars once, in the
+     * background after the first index is built, and stored in {@code prunedFile}. Later instances only open the
+     * jars listed there.
+     *
+     * @param root the jar with the mapped classes, i.e. the version jar
+     * @param prunedFile where the pruned class path is cached, it has to change whenever the class path does
+     */
+    public JarClassPath(List<Path> jars, Path root, Path prunedFile) {
+        this.jars = new ArrayList<>(jars);
+        this.root = root;
+        this.prunedFile = prunedFile;
+    }
+
+    @Override
+    public byte[] getClassBytes(String internalName) throws IOException {
+        Location location = getIndex().get(internalName + ".class");
+        if (location == null) return null;
+        return location.zip.readAllBytes(location.entry);
+    }
+
+    /**
+     * @return the number of indexed class files, building the index if needed
+     */
+    public int size() throws IOException {
+        return getIndex().size();
+    }
+
+    /**
+     * @return the number of indexed classes if the index is built, otherwise an estimate from the size of all jars
+     */
+    public long estimateClassCount() {
+        if (index.isDone()) {
+            try {
+                return index.get().size();
+            } catch (InterruptedException | ExecutionException e) {
+                // a failed index doesn't hold anything
+                return 0;
+            }
+        }
+        long bytes = 0;
+        for (Path jar : jars) {
+            try {
+                bytes += Files.size(jar);
+            } catch (IOException ignored) {
+                // missing jars are skipped when indexing
+            }
+        }
+        return bytes / AVERAGE_CLASS_SIZE;
+    }
+
+    private Map<String, Location> getIndex() throws IOException {
+        if (closed) throw new IOException("Closed");
+        index.run();
+        try {
+            return index.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) throw ((UncheckedIOException) cause).getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    private Map<String, Location> buildIndex() throws IOException {
+        long start = System.nanoTime();
+        List<Path> pruned = root == null ? null : readPruned();
+        List<Path> jars = pruned != null ? pruned : this.jars;
+        List<ZipIndex> zips = jars.parallelStream().map(jar -> {
+            if (!Files.isRegularFile(jar)) {
+                System.out.println("Skipping missing class path entry " + jar);
+                return null;
+            }
+            try {
+                ZipIndex zip = ZipIndex.open(jar, true);
+                // a mapped index doesn't need its file descriptor anymore
+                if (zip.isMapped()) {
+                    zip.close();
+                } else {
+                    opened.add(zip);
+                }
+                return zip;
+            } catch (IOException | RuntimeException e) {
+                // like a class loader, a broken jar shouldn't make the rest of the class path unusable
+                System.out.println("Skipping unreadable class path entry " + jar + ": " + e);
+                return null;
+            }
+        }).collect(Collectors.toList());
+        Map<String, Location> classes = new HashMap<>();
+        for (int i = 0; i < zips.size(); i++) {
+            ZipIndex zip = zips.get(i);
+            if (zip == null) continue;
+            for (ZipIndex.Entry entry : zip.getEntries()) {
+                if (entry.name.endsWith(".class")) classes.putIfAbsent(entry.name, new Location(zip, entry, i));
+            }
+        }
+        System.out.printf("Indexed %d classes in %d jars in %.3fms\n", classes.size(), jars.size(), (System.nanoTime() - start) / 1e6);
+        if (root != null && pruned == null) {
+            int rootIndex = jars.indexOf(root);
+            // a jar that was skipped this time would be left out of every later run
+            if (rootIndex >= 0 && !zips.contains(null)) {
+                // lookups only need the index, so they don't wait for the supertypes to be read
+                ZipIndex rootZip = zips.get(rootIndex);
+                pruning = CompletableFuture.runAsync(() -> {
+                    try {
+                        List<Path> prunedJars = prune(classes, rootZip);
+                        // reads fail once the jars are closed, the result would miss jars
+                        if (!closed) writePruned(prunedJars);
+                    } catch (IOException e) {
+                        System.out.println("Could not prune class path: " + e);
+                    }
+                });
+            }
+        }
+        return classes;
+    }
+
+    /**
+     * @return completes once the pruned class path determined by the first index is written
+     */
+    CompletableFuture<Void> pruning() {
+        return pruning;
+    }
+
+    /**
+     * Follows the supertypes of every class in the root jar
+     *
+     * @return the jars they are found in, in class path order
+     */
+    private List<Path> prune(Map<String, Location> classes, ZipIndex rootZip) throws IOException {
+        long start = System.nanoTime();
+        BitSet used = new BitSet();
+        Set<String> seen = new HashSet<>();
+        ArrayDeque<String> queue = new ArrayDeque<>();
+        for (ZipIndex.Entry entry : rootZip.getEntries()) {
+            if (entry.name.endsWith(".class") && seen.add(entry.name)) queue.add(entry.name);
+        }
+        while (!queue.isEmpty()) {
+            Location location = classes.get(queue.remove());
+            // JDK classes aren't on the class path
+            if (location == null) continue;
+            used.set(location.jar);
+            List<String> supertypes;
+            try (InputStream in = location.zip.getInputStream(location.entry)) {
+                supertypes = readSupertypes(in);
+            } catch (IOException e) {
+                // not a class file, it can't contribute supertypes either
+                continue;
+            }
+            for (String supertype : supertypes) {
+                if (seen.add(supertype + ".class")) queue.add(supertype + ".class");
+            }
+        }
+        List<Path> pruned = new ArrayList<>();
+        for (int i = used.nextSetBit(0); i >= 0; i = used.nextSetBit(i + 1)) pruned.add(jars.get(i));
+        System.out.printf("Pruned class path to %d of %d jars in %.3fms\n", pruned.size(), jars.size(), (System.nanoTime() - start) / 1e6);
+        return pruned;
+    }
+
+    /**
+     * Reads a class file only up to its interfaces, decompressing as little as possible. The constant pool has to be
+     * walked to find the header, but only class names are decoded.
+     *
+     * @return the internal names of the super class, if any, and the interfaces
+     */
+    static List<String> readSupertypes(InputStream in) throws IOException {
+        HeaderBuffer header = new HeaderBuffer(in);
+        header.require(10);
+        if (header.u2(0) != 0xcafe || header.u2(2) != 0xbabe) throw new IOException("Not a class file");
+        int count = header.u2(8);
+        // offsets of the constant pool entries
+        int[] entries = new int[count];
+        int pos = 10;
+        for (int i = 1; i < count; i++) {
+            entries[i] = pos;
+            header.require(pos + 3);
+            int tag = header.u1(pos);
+            switch (tag) {
+                case 1: pos += 3 + header.u2(pos + 1); break; // Utf8
+                case 7: case 8: case 16: case 19: case 20: pos += 3; break; // Class, String, MethodType, Module, Package
+                case 15: pos += 4; break; // MethodHandle
+                case 3: case 4: case 9: case 10: case 11: case 12: case 17: case 18: pos += 5; break;
+                case 5: case 6: pos += 9; i++; break; // Long and Double take two entries
+                default: throw new IOException("Invalid constant pool tag " + tag);
+            }
+        }
+        // access flags, this class, super class, interface count
+        header.require(pos + 8);
+        int superIndex = header.u2(pos + 4);
+        int interfaceCount = header.u2(pos + 6);
+        header.require(pos + 8 + 2 * interfaceCount);
+        List<String> names = new ArrayList<>(interfaceCount + 1);
+        if (superIndex != 0) names.add(header.className(entries, superIndex));
+        for (int i = 0; i < interfaceCount; i++) names.add(header.className(entries, header.u2(pos + 8 + 2 * i)));
+        return names;
+    }
+
+    /**
+     * @return the cached pruned class path, or null if there is none or it doesn't match the class path
+     */
+    private List<Path> readPruned() {
+        if (prunedFile == null || !Files.exists(prunedFile)) return null;
+        try {
+            List<Path> pruned = new ArrayList<>();
+            Set<Path> all = new HashSet<>(jars);
+            for (String line : Files.readAllLines(prunedFile, StandardCharsets.UTF_8)) {
+                Path jar = Paths.get(line);
+                if (!all.contains(jar)) return null;
+                pruned.add(jar);
+            }
+            return pruned;
+        } catch (IOException | InvalidPathException e) {
+            System.out.println("Could not read pruned class path: " + e);
+            return null;
+        }
+    }
+
+    private void writePruned(List<Path> pruned) {
+        if (prunedFile == null) return;
+        List<String> lines = new ArrayList<>(pruned.size());
+        for (Path jar : pruned) lines.add(jar.toString());
+        try {
+            Files.createDirectories(prunedFile.getParent());
+            Path tmp = Files.createTempFile(prunedFile.getParent(), prunedFile.getFileName().toString(), ".tmp");
+            try {
+                Files.write(tmp, lines, StandardCharsets.UTF_8);
+                Files.move(tmp, prunedFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        } catch (IOException e) {
+            System.out.println("Could not save pruned class path: " + e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        synchronized (opened) {
+            for (ZipIndex zip : opened) zip.close();
+            opened.clear();
+        }
+    }
+
+    /**
+     * The start of a class file, read from the stream as far as needed
+     */
+    private static final class HeaderBuffer {
+        private final InputStream in;
+        private byte[] buf = new byte[4096];
+        private int length;
+
+        HeaderBuffer(InputStream in) {
+            this.in = in;
+        }
+
+        void require(int end) throws IOException {
+            if (end > buf.length) buf = Arrays.copyOf(buf, Math.max(buf.length * 2, end));
+            while (length < end) {
+                int n = in.read(buf, length, buf.length - length);
+                if (n < 0) throw new EOFException("Truncated class file");
+                length += n;
+            }
+        }
+
+        int u1(int pos) {
+            return buf[pos] & 0xff;
+        }
+
+        int u2(int pos) {
+            return (buf[pos] & 0xff) << 8 | buf[pos + 1] & 0xff;
+        }
+
+        String className(int[] entries, int index) throws IOException {
+            if (index <= 0 || index >= entries.length || u1(entries[index]) != 7) throw new IOException("Invalid class reference " + index);
+            int nameIndex = u2(entries[index] + 1);
+            if (nameIndex <= 0 || nameIndex >= entries.length || u1(entries[nameIndex]) != 1) throw new IOException("Invalid class name " + nameIndex);
+            int offset = entries[nameIndex];
+            // modified UTF-8 with its length prefix, as readUTF expects it
+            return new DataInputStream(new ByteArrayInputStream(buf, offset + 1, 2 + u2(offset + 1))).readUTF();
+        }
+    }
+
+    private static final class Location {
+        final ZipIndex zip;
+        final ZipIndex.Entry entry;
+        // index of the jar in the indexed class path
+        final int jar;
+
+        Location(ZipIndex zip, ZipIndex.Entry entry, int jar) {
+            this.zip = zip;
+            this.entry = entry;
+            this.jar = jar;
+        }
+    }
+}
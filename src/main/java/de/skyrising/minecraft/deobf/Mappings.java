@@ -11,4 +11,18 @@ public interface Mappings {
     Collection<String> getDeobfuscatedMethods(String className, String method);
     String deobfuscateField(String className, String fieldName);
     String obfuscateField(String className, String fieldName);
+
+    /**
+     * @return the version of the mappings, e.g. the yarn version, or null if unknown
+     */
+    default String getVersion() {
+        return null;
+    }
+
+    /**
+     * @return a rough estimate of the memory held by these mappings in bytes, 0 if unknown
+     */
+    default long estimateSize() {
+        return 0;
+    }
 }
@@ -1,223 +1,533 @@
 package de.skyrising.minecraft.deobf;
 
-import com.google.common.collect.Multimap;
-import com.google.common.collect.MultimapBuilder;
+import de.skyrising.util.StringPool;
 import de.skyrising.util.StringView;
 import de.skyrising.util.Utf8LineReader;
-import it.unimi.dsi.fastutil.objects.Object2IntMap;
-import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import de.skyrising.util.Utf8String;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
 import java.util.*;
-
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Tiny v1 mappings in a columnar layout: class, method and field names are interned into a {@link StringPool} shared
+ * by all namespaces, descriptors into one pool per namespace, so equal names are stored once and compared by id.
+ * Members are stored as parallel {@code int} columns and found through primitive-keyed hash tables, so no object is
+ * allocated per member.
+ * <p>
+ * Only classes and the names of each namespace are built while loading. The member columns and indexes of a
+ * namespace are materialized the first time a lookup starts from that namespace, or ahead of time with
+ * {@link #prebuild(Executor)}.
+ */
 public class TinyMappings implements Mappings {
     private final StringView[] namespaces;
-    private final Object2IntMap<StringView>[] classMaps;
-    private final List<StringView>[] classLists;
-    private final Object2IntMap<MemberInfo>[] methodMaps;
-    private final Multimap<MemberInfo, Integer>[] methodNames;
-    private final List<StringView>[] methodNameLists;
-    private final List<StringView>[] methodSignatureLists;
-    private final Object2IntMap<MemberInfo>[] fieldMaps;
-    private final List<StringView>[] fieldLists;
+    private final StringPool names = new StringPool();
+    private final StringPool[] descriptors;
+    // class index -> name id
+    private final IntArrayList[] classNames;
+    // name id -> class index
+    private final Int2IntOpenHashMap[] classIndexes;
+    // method index -> name/descriptor id of the owner, name and descriptor
+    private final IntArrayList[] methodOwners;
+    private final IntArrayList[] methodNames;
+    private final IntArrayList[] methodDescriptors;
+    // (owner, name) -> most recently added method index, further overloads are chained through methodNext
+    private final Long2IntOpenHashMap[] methodHeads;
+    private final int[][] methodNext;
+    private final IntArrayList[] fieldOwners;
+    private final IntArrayList[] fieldNames;
+    // (owner, name) -> field index
+    private final Long2IntOpenHashMap[] fieldIndexes;
+    // runs finishLoading once per namespace, get() publishes the arrays it filled
+    private final FutureTask<?>[] materialized;
+    private String version;
     private int namespaceFrom = 0;
     private int namespaceTo;
 
     private TinyMappings(StringView[] header) {
         namespaces = Arrays.copyOfRange(header, 1, header.length);
         namespaceTo = namespaces.length - 1;
-        classMaps = new Object2IntMap[namespaces.length];
-        classLists = new List[namespaces.length];
-        methodMaps = new Object2IntMap[namespaces.length];
-        methodNames = new Multimap[namespaces.length];
-        methodNameLists = new List[namespaces.length];
-        methodSignatureLists = new List[namespaces.length];
-        fieldMaps = new Object2IntMap[namespaces.length];
-        fieldLists = new List[namespaces.length];
-        for (int i = 0; i < namespaces.length; i++) {
-            classMaps[i] = new Object2IntOpenHashMap<>();
-            classLists[i] = new ArrayList<>();
-            methodNames[i] = MultimapBuilder.hashKeys().arrayListValues().build();
-            methodNameLists[i] = new ArrayList<>();
-            methodSignatureLists[i] = new ArrayList<>();
-            fieldLists[i] = new ArrayList<>();
+        int ns = namespaces.length;
+        descriptors = new StringPool[ns];
+        classNames = new IntArrayList[ns];
+        classIndexes = new Int2IntOpenHashMap[ns];
+        methodOwners = new IntArrayList[ns];
+        methodNames = new IntArrayList[ns];
+        methodDescriptors = new IntArrayList[ns];
+        methodHeads = new Long2IntOpenHashMap[ns];
+        methodNext = new int[ns][];
+        fieldOwners = new IntArrayList[ns];
+        fieldNames = new IntArrayList[ns];
+        fieldIndexes = new Long2IntOpenHashMap[ns];
+        materialized = new FutureTask[ns];
+        for (int i = 0; i < ns; i++) {
+            descriptors[i] = new StringPool();
+            classNames[i] = new IntArrayList();
+            classIndexes[i] = new Int2IntOpenHashMap();
+            classIndexes[i].defaultReturnValue(-1);
+            methodNames[i] = new IntArrayList();
+            fieldNames[i] = new IntArrayList();
+            int namespace = i;
+            materialized[i] = new FutureTask<>(() -> finishLoading(namespace), null);
         }
+        // the official namespace is known while loading, the others are derived in finishLoading
+        methodOwners[0] = new IntArrayList();
+        methodDescriptors[0] = new IntArrayList();
+        fieldOwners[0] = new IntArrayList();
     }
 
     public static TinyMappings load(ReadableByteChannel channel) throws IOException {
         try {
             long start = System.nanoTime();
-            Utf8LineReader reader = new Utf8LineReader(channel);
+            Utf8LineReader reader = Utf8LineReader.open(channel, 8192);
             byte[] line = reader.readLine();
             TinyMappings mappings = new TinyMappings(StringView.split(line, '\t'));
-            List<MemberInfo> fields = new ArrayList<>();
-            List<MemberInfo> methods = new ArrayList<>();
+            int[] ends = new int[16];
             while ((line = reader.readLine()) != null) {
-                mappings.loadLine(StringView.split(line, '\t'), methods, fields);
+                Utf8String s = new Utf8String(line);
+                int count = StringView.split(s, '\t', ends);
+                if (count > ends.length) {
+                    ends = new int[count];
+                    StringView.split(s, '\t', ends);
+                }
+                mappings.loadLine(s, ends, 0, count);
             }
-            for (int i = 0; i < mappings.namespaces.length; i++) {
-                mappings.methodMaps[i] = new Object2IntOpenHashMap<>(methods.size());
-                mappings.fieldMaps[i] = new Object2IntOpenHashMap<>(fields.size());
+            mappings.trimPools();
+            mappings.printLoaded(start);
+            return mappings;
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Loads the mappings using multiple threads: the file is split into line-aligned chunks that are tokenized
+     * concurrently.
+     * The result is the same as with {@link #load(ReadableByteChannel)}.
+     */
+    public static TinyMappings load(ReadableByteChannel channel, int threads) throws IOException {
+        if (threads <= 1) return load(channel);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            long start = System.nanoTime();
+            byte[] bytes = readFully(channel);
+            int headerEnd = nextLine(bytes, 0);
+            TinyMappings mappings = new TinyMappings(StringView.split(line(bytes, 0, headerEnd), '\t'));
+            int chunkCount = Math.max(1, Math.min(threads * 4, (bytes.length - headerEnd) / (64 * 1024)));
+            List<Future<Chunk>> chunks = new ArrayList<>(chunkCount);
+            int chunkStart = headerEnd;
+            for (int i = 1; i <= chunkCount && chunkStart < bytes.length; i++) {
+                int chunkEnd = i == chunkCount
+                        ? bytes.length
+                        : nextLine(bytes, headerEnd + (int) ((long) (bytes.length - headerEnd) * i / chunkCount));
+                int from = chunkStart, to = Math.max(chunkStart, chunkEnd);
+                chunks.add(pool.submit(() -> tokenize(bytes, from, to)));
+                chunkStart = to;
             }
-            mappings.finishLoading(methods, fields);
-            System.out.printf("Loaded mappings in %.3fms: %d classes, %d methods, %d fields\n",
-                    (System.nanoTime() - start) / 1e6, mappings.classLists[0].size(), methods.size(), fields.size());
+            for (Future<Chunk> future : chunks) {
+                Chunk chunk = future.get();
+                int[] fields = chunk.fields.elements();
+                int pos = 0;
+                for (CharSequence line : chunk.lines) {
+                    int count = fields[pos];
+                    mappings.loadLine(line, fields, pos + 1, count);
+                    pos += count + 1;
+                }
+            }
+            mappings.trimPools();
+            mappings.printLoaded(start);
             return mappings;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IOException(cause);
         } finally {
+            pool.shutdown();
             channel.close();
         }
     }
 
-    public void setNamespaceFrom(StringView namespaceFrom) {
-        int namespaceFromIndex = -1;
-        for (int i = 0; i < namespaces.length; i++) {
-            if (namespaces[i].equals(namespaceFrom)) {
-                namespaceFromIndex = i;
-                break;
+    private static byte[] readFully(ReadableByteChannel channel) throws IOException {
+        if (channel instanceof FileChannel) {
+            FileChannel fileChannel = (FileChannel) channel;
+            long size = fileChannel.size() - fileChannel.position();
+            if (size <= Integer.MAX_VALUE - 8) {
+                byte[] bytes = new byte[(int) size];
+                fileChannel.map(FileChannel.MapMode.READ_ONLY, fileChannel.position(), size).get(bytes);
+                return bytes;
             }
         }
-        if (namespaceFromIndex < 0) throw new IllegalArgumentException(namespaceFrom.toString());
-        this.namespaceFrom = namespaceFromIndex;
+        ByteArrayOutputStream out = channel instanceof SeekableByteChannel
+                ? new ByteArrayOutputStream((int) Math.min(Integer.MAX_VALUE - 8,
+                        ((SeekableByteChannel) channel).size()))
+                : new ByteArrayOutputStream();
+        ByteBuffer buf = ByteBuffer.allocate(64 * 1024);
+        while (channel.read(buf) >= 0) {
+            out.write(buf.array(), 0, buf.position());
+            buf.clear();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @return the offset after the next {@code \n} at or after {@code from}
+     */
+    private static int nextLine(byte[] bytes, int from) {
+        for (int i = from; i < bytes.length; i++) {
+            if (bytes[i] == '\n') return i + 1;
+        }
+        return bytes.length;
+    }
+
+    private static byte[] line(byte[] bytes, int start, int end) {
+        if (end > start && bytes[end - 1] == '\n') end--;
+        if (end > start && bytes[end - 1] == '\r') end--;
+        return Arrays.copyOfRange(bytes, start, end);
+    }
+
+    /**
+     * Lines of a chunk split at tabs
+     */
+    private static final class Chunk {
+        final List<CharSequence> lines = new ArrayList<>();
+        // for each line the number of fields followed by their end offsets,
+        // see StringView.split(CharSequence, char, int[])
+        final IntArrayList fields = new IntArrayList();
+    }
+
+    private static Chunk tokenize(byte[] bytes, int start, int end) {
+        Chunk chunk = new Chunk();
+        int[] ends = new int[16];
+        while (start < end) {
+            int lineEnd = nextLine(bytes, start);
+            Utf8String line = new Utf8String(line(bytes, start, lineEnd));
+            int count = StringView.split(line, '\t', ends);
+            if (count > ends.length) {
+                ends = new int[count];
+                StringView.split(line, '\t', ends);
+            }
+            chunk.lines.add(line);
+            chunk.fields.add(count);
+            chunk.fields.addElements(chunk.fields.size(), ends, 0, count);
+            start = lineEnd;
+        }
+        return chunk;
+    }
+
+    private void printLoaded(long start) {
+        System.out.printf("Loaded mappings in %.3fms: %d classes, %d methods, %d fields\n",
+                (System.nanoTime() - start) / 1e6, getClassCount(), getMethodCount(), getFieldCount());
+    }
+
+    public void setNamespaceFrom(StringView namespaceFrom) {
+        this.namespaceFrom = getNamespaceIndex(namespaceFrom);
     }
 
     public void setNamespaceTo(StringView namespaceTo) {
-        int namespaceToIndex = -1;
+        this.namespaceTo = getNamespaceIndex(namespaceTo);
+    }
+
+    private int getNamespaceIndex(StringView namespace) {
         for (int i = 0; i < namespaces.length; i++) {
-            if (namespaces[i].equals(namespaceTo)) {
-                namespaceToIndex = i;
-                break;
-            }
+            if (namespaces[i].equals(namespace)) return i;
+        }
+        throw new IllegalArgumentException(namespace.toString());
+    }
+
+    /**
+     * Starts materializing all namespaces that haven't been used yet on the given executor.
+     * Lookups that need a namespace still being built wait for it.
+     */
+    public void prebuild(Executor executor) {
+        for (FutureTask<?> task : materialized) {
+            if (!task.isDone()) executor.execute(task);
         }
-        if (namespaceToIndex < 0) throw new IllegalArgumentException(namespaceTo.toString());
-        this.namespaceTo = namespaceToIndex;
     }
 
-    private void loadLine(StringView[] split, List<MemberInfo> methods, List<MemberInfo> fields) {
-        if (split[0].length() == 6) { // METHOD
-            for (int i = 3; i < split.length; i++) {
-                int nsIndex = i - 3;
-                if (nsIndex == 0) methods.add(new MemberInfo(split[1], split[i], split[2]));
-                methodNameLists[nsIndex].add(split[i]);
+    boolean isMaterialized(int namespace) {
+        return materialized[namespace].isDone();
+    }
+
+    private void materialize(int namespace) {
+        FutureTask<?> task = materialized[namespace];
+        if (!task.isDone()) task.run();
+        try {
+            task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while building namespace " + namespaces[namespace], e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private static long key(int owner, int name) {
+        return ((long) owner << 32) | (name & 0xffffffffL);
+    }
+
+    private int getNameId(String name) {
+        return name == null ? -1 : names.find(name);
+    }
+
+    /**
+     * Loads a line split by {@link StringView#split(CharSequence, char, int[])}, the field ends are
+     * {@code ends[off..off + count]}
+     */
+    private void loadLine(CharSequence line, int[] ends, int off, int count) {
+        if (count == 0) return;
+        if (ends[off] == 6) { // METHOD
+            methodOwners[0].add(intern(names, line, ends, off, 1));
+            methodDescriptors[0].add(intern(descriptors[0], line, ends, off, 2));
+            for (int i = 3; i < count; i++) {
+                methodNames[i - 3].add(intern(names, line, ends, off, i));
             }
             return;
         }
-        if (split[0].charAt(0) == 'C') { // CLASS
-            int classIndex = classLists[0].size();
-            for (int i = 1; i < split.length; i++) {
+        if (line.charAt(0) == 'C') { // CLASS
+            int classIndex = classNames[0].size();
+            for (int i = 1; i < count; i++) {
                 int nsIndex = i - 1;
-                classMaps[nsIndex].put(split[i], classIndex);
-                classLists[nsIndex].add(split[i]);
+                int nameId = intern(names, line, ends, off, i);
+                classIndexes[nsIndex].put(nameId, classIndex);
+                classNames[nsIndex].add(nameId);
             }
             return;
         }
-        for (int i = 3; i < split.length; i++) { // FIELD
-            int nsIndex = i - 3;
-            if (nsIndex == 0) fields.add(new MemberInfo(split[1], split[i]));
-            fieldLists[nsIndex].add(split[i]);
+        fieldOwners[0].add(intern(names, line, ends, off, 1)); // FIELD
+        for (int i = 3; i < count; i++) {
+            fieldNames[i - 3].add(intern(names, line, ends, off, i));
         }
     }
 
-    private void finishLoading(List<MemberInfo> methods, List<MemberInfo> fields) {
-        for (int methodIndex = 0; methodIndex < methods.size(); methodIndex++) {
-            finishLoadingMethod(methodIndex, methods.get(methodIndex));
+    private static int intern(StringPool pool, CharSequence line, int[] ends, int off, int field) {
+        int start = field == 0 ? 0 : ends[off + field - 1] + 1;
+        return pool.intern(line, start, ends[off + field] - start);
+    }
+
+    /**
+     * Builds the member columns and indexes of one namespace, only touching state of that namespace.
+     * Names are only read here, so the namespaces can be materialized concurrently.
+     */
+    private void finishLoading(int namespace) {
+        int methodCount = getMethodCount();
+        if (namespace != 0) {
+            IntArrayList owners = new IntArrayList(methodCount);
+            IntArrayList descs = new IntArrayList(methodCount);
+            for (int i = 0; i < methodCount; i++) {
+                owners.add(renameClass(methodOwners[0].getInt(i), 0, namespace));
+                descs.add(renameSignature(methodDescriptors[0].getInt(i), namespace));
+            }
+            methodOwners[namespace] = owners;
+            methodDescriptors[namespace] = descs;
         }
-        for (int fieldIndex = 0; fieldIndex < fields.size(); fieldIndex++) {
-            finishLoadingField(fieldIndex, fields.get(fieldIndex));
+        Long2IntOpenHashMap heads = new Long2IntOpenHashMap(methodCount);
+        heads.defaultReturnValue(-1);
+        int[] next = new int[methodCount];
+        IntArrayList owners = methodOwners[namespace];
+        IntArrayList memberNames = methodNames[namespace];
+        for (int i = 0; i < methodCount; i++) {
+            next[i] = heads.put(key(owners.getInt(i), memberNames.getInt(i)), i);
         }
-        /*
-        for (int i = 0; i < namespaces.length; i++) {
-            Object2IntMap<MemberInfo> methodMap = methodMaps[i];
-            try {
-                Field n = methodMap.getClass().getDeclaredField("n");
-                n.setAccessible(true);
-                int size = n.getInt(methodMap);
-                System.out.printf("%d: %d\n", i, size);
-                int[] hashCount = new int[size];
-                Multimap<Integer, MemberInfo> collisions = MultimapBuilder.hashKeys().arrayListValues().build();
-                for (MemberInfo m : methodMap.keySet()) {
-                    int pos = HashCommon.mix(m.hashCode()) & (size - 1);
-                    hashCount[pos]++;
-                    collisions.put(pos, m);
-                }
-                IntSummaryStatistics summaryStatistics = Arrays.stream(hashCount).summaryStatistics();
-                System.out.println(summaryStatistics);
-                for (int j = 0; j < size; j++) {
-                    if (hashCount[j] != summaryStatistics.getMax()) continue;
-                    System.out.println(Integer.toHexString(j));
-                    for (MemberInfo m : collisions.get(j)) {
-                        System.out.println("  " + Integer.toBinaryString(m.hashCode()) + ", " + Integer.toHexString(HashCommon.mix(m.hashCode())) + ": " + m);
-                    }
-                }
-            } catch (ReflectiveOperationException e) {}
+        methodHeads[namespace] = heads;
+        methodNext[namespace] = next;
+        int fieldCount = getFieldCount();
+        if (namespace != 0) {
+            IntArrayList fieldOwners = new IntArrayList(fieldCount);
+            for (int i = 0; i < fieldCount; i++) {
+                fieldOwners.add(renameClass(this.fieldOwners[0].getInt(i), 0, namespace));
+            }
+            this.fieldOwners[namespace] = fieldOwners;
+        }
+        Long2IntOpenHashMap fields = new Long2IntOpenHashMap(fieldCount);
+        fields.defaultReturnValue(-1);
+        for (int i = 0; i < fieldCount; i++) {
+            fields.put(key(fieldOwners[namespace].getInt(i), fieldNames[namespace].getInt(i)), i);
         }
-        */
+        fieldIndexes[namespace] = fields;
+        if (namespace != 0) descriptors[namespace].trim();
     }
 
-    private void finishLoadingMethod(int index, MemberInfo method) {
-        for (int i = 0; i < namespaces.length; i++) {
-            StringView className = renameClass(method.className, 0, i);
-            StringView sig = renameSignature(method.descriptor, 0, i);
-            StringView name = methodNameLists[i].get(index);
-            methodMaps[i].put(new MemberInfo(className, name, sig), index);
-            methodSignatureLists[i].add(name);
-            methodNames[i].put(new MemberInfo(className, name), index);
-        }
+    /**
+     * Releases the spare capacity of the pools filled by {@link #loadLine(CharSequence, int[], int, int)}, they are
+     * only read after this
+     */
+    private void trimPools() {
+        names.trim();
+        descriptors[0].trim();
     }
 
-    private void finishLoadingField(int index, MemberInfo field) {
-        for (int i = 0; i < namespaces.length; i++) {
-            StringView className = renameClass(field.className, 0, i);
-            StringView name = fieldLists[i].get(index);
-            fieldMaps[i].put(new MemberInfo(className, name), index);
-        }
+    /**
+     * @return the name id of the class in the target namespace, or the original id if the class isn't mapped
+     */
+    private int renameClass(int nameId, int nsFrom, int nsTo) {
+        int index = classIndexes[nsFrom].get(nameId);
+        if (index < 0) return nameId;
+        return classNames[nsTo].getInt(index);
     }
 
-    private StringView renameClass(StringView className, int nsFrom, int nsTo) {
-        int index = classMaps[nsFrom].getOrDefault(className, -1);
+    private String renameClass(String className, int nsFrom, int nsTo) {
+        int nameId = getNameId(className);
+        if (nameId < 0) return null;
+        int index = classIndexes[nsFrom].get(nameId);
         if (index < 0) return null;
-        return classLists[nsTo].get(index);
-    }
-
-    private StringView renameSignature(StringView sig, int nsFrom, int nsTo) {
-        if (nsFrom == nsTo) return sig;
-        CharSequence[] parts = new CharSequence[sig.length()];
-        int index = 0;
-        for (int i = 0; i < sig.length(); i++) {
-            char c = sig.charAt(i);
-            if (c != 'L') {
-                parts[index++] = String.valueOf(c);
-                continue;
-            }
+        return names.toString(classNames[nsTo].getInt(index));
+    }
+
+    /**
+     * Renames the classes of a namespace 0 descriptor, building the result directly in the descriptor pool of the
+     * target namespace
+     *
+     * @return the id of the renamed descriptor
+     */
+    private int renameSignature(int descriptor, int nsTo) {
+        StringPool from = descriptors[0];
+        StringPool to = descriptors[nsTo];
+        int length = from.length(descriptor);
+        for (int i = 0; i < length; i++) {
+            char c = from.charAt(descriptor, i);
+            to.append(c);
+            if (c != 'L') continue;
             int end = i + 1;
-            for (; end < sig.length(); end++) {
-                if (sig.charAt(end) == ';') break;
+            for (; end < length; end++) {
+                if (from.charAt(descriptor, end) == ';') break;
             }
-            StringView obfClassName = sig.subSequence(i + 1, end);
-            StringView className = renameClass(obfClassName, nsFrom, nsTo);
-            parts[index++] = "L";
-            parts[index++] = className == null ? obfClassName : className;
-            parts[index++] = ";";
+            int obfClassName = names.find(from, descriptor, i + 1, end);
+            if (obfClassName >= 0) {
+                to.append(names, renameClass(obfClassName, 0, nsTo));
+            } else {
+                to.append(from, descriptor, i + 1, end);
+            }
+            to.append(';');
             i = end;
         }
-        return StringView.join(parts, index);
+        return to.commit();
+    }
+
+    /**
+     * Estimates the size as if every namespace was materialized, so the estimate doesn't grow after loading
+     */
+    @Override
+    public long estimateSize() {
+        long size = names.estimateSize();
+        for (StringPool pool : descriptors) size += pool.estimateSize();
+        // descriptor pools of other namespaces are about as large as the official one once they are built
+        for (int i = 0; i < namespaces.length; i++) {
+            if (i > 0 && !isMaterialized(i)) size += descriptors[0].estimateSize();
+        }
+        // column entries plus roughly 12 bytes per hash table entry at the default load factor
+        long perNamespace = 16L * getClassCount() + 32L * getMethodCount() + 20L * getFieldCount();
+        return size + namespaces.length * perNamespace;
+    }
+
+    @Override
+    public String getVersion() {
+        return version;
+    }
+
+    public void setVersion(String version) {
+        this.version = version;
+    }
+
+    int getNamespaceCount() {
+        return namespaces.length;
+    }
+
+    String getNamespace(int namespace) {
+        return namespaces[namespace].toString();
+    }
+
+    int getClassCount() {
+        return classNames[0].size();
+    }
+
+    String getClassName(int namespace, int index) {
+        return names.toString(classNames[namespace].getInt(index));
+    }
+
+    int getMethodCount() {
+        return methodNames[0].size();
+    }
+
+    String getMethodOwner(int namespace, int index) {
+        materialize(namespace);
+        return names.toString(methodOwners[namespace].getInt(index));
+    }
+
+    String getMethodName(int namespace, int index) {
+        return names.toString(methodNames[namespace].getInt(index));
+    }
+
+    String getMethodDescriptor(int namespace, int index) {
+        materialize(namespace);
+        return descriptors[namespace].toString(methodDescriptors[namespace].getInt(index));
+    }
+
+    int getFieldCount() {
+        return fieldNames[0].size();
+    }
+
+    String getFieldOwner(int namespace, int index) {
+        materialize(namespace);
+        return names.toString(fieldOwners[namespace].getInt(index));
+    }
+
+    String getFieldName(int namespace, int index) {
+        return names.toString(fieldNames[namespace].getInt(index));
     }
 
     @Override
     public String deobfuscateClass(String className) {
-        return Objects.toString(renameClass(new StringView(className), namespaceFrom, namespaceTo), null);
+        return renameClass(className, namespaceFrom, namespaceTo);
     }
 
     @Override
     public String obfuscateClass(String className) {
-        return Objects.toString(renameClass(new StringView(className), namespaceTo, namespaceFrom), null);
+        return renameClass(className, namespaceTo, namespaceFrom);
+    }
+
+    /**
+     * @return the index of the method in the given namespace, or -1
+     */
+    private int findMethod(String className, String method, String signature, int namespace) {
+        if (className == null || method == null || signature == null) return -1;
+        int owner = getNameId(className);
+        int name = getNameId(method);
+        if (owner < 0 || name < 0) return -1;
+        materialize(namespace);
+        int desc = descriptors[namespace].find(signature);
+        if (desc < 0) return -1;
+        IntArrayList descs = methodDescriptors[namespace];
+        int[] next = methodNext[namespace];
+        for (int index = methodHeads[namespace].get(key(owner, name)); index >= 0; index = next[index]) {
+            if (descs.getInt(index) == desc) return index;
+        }
+        return -1;
     }
 
     private String renameMethod(String className, String method, String signature, int nsFrom, int nsTo) {
-        if (className == null || method == null || signature == null) return null;
-        int index = methodMaps[nsFrom].getOrDefault(new MemberInfo(className, method, signature), -1);
+        int index = findMethod(className, method, signature, nsFrom);
         if (index < 0) return null;
-        return methodNameLists[nsTo].get(index).toString();
+        return names.toString(methodNames[nsTo].getInt(index));
     }
 
     @Override
@@ -226,10 +536,18 @@ public class TinyMappings implements Mappings {
     }
 
     private List<String> getMethods(String className, String method, int namespace) {
-        Collection<Integer> indexes = methodNames[namespace].get(new MemberInfo(className, method));
-        ArrayList<String> names = new ArrayList<>(indexes.size());
-        for (Integer index : indexes) names.add(methodSignatureLists[namespace].get(index).toString());
-        return names;
+        int owner = getNameId(className);
+        int name = getNameId(method);
+        if (owner < 0 || name < 0) return new ArrayList<>();
+        materialize(namespace);
+        ArrayList<String> signatures = new ArrayList<>();
+        IntArrayList descs = methodDescriptors[namespace];
+        int[] next = methodNext[namespace];
+        for (int index = methodHeads[namespace].get(key(owner, name)); index >= 0; index = next[index]) {
+            signatures.add(descriptors[namespace].toString(descs.getInt(index)));
+        }
+        Collections.reverse(signatures);
+        return signatures;
     }
 
     @Override
@@ -248,9 +566,13 @@ public class TinyMappings implements Mappings {
     }
 
     private String renameField(String className, String field, int nsFrom, int nsTo) {
-        int index = fieldMaps[nsFrom].getOrDefault(new MemberInfo(className, field), -1);
+        int owner = getNameId(className);
+        int name = getNameId(field);
+        if (owner < 0 || name < 0) return null;
+        materialize(nsFrom);
+        int index = fieldIndexes[nsFrom].get(key(owner, name));
         if (index < 0) return null;
-        return fieldLists[nsTo].get(index).toString();
+        return names.toString(fieldNames[nsTo].getInt(index));
     }
 
     @Override
@@ -262,60 +584,4 @@ public class TinyMappings implements Mappings {
     public String obfuscateField(String className, String fieldName) {
         return renameField(className, fieldName, namespaceTo, namespaceFrom);
     }
-
-    private static final class MemberInfo /* implements Comparable<MemberInfo>*/ {
-        final StringView className;
-        final StringView memberName;
-        final StringView descriptor;
-
-        MemberInfo(StringView className, StringView memberName) {
-            this(className, memberName, null);
-        }
-
-        MemberInfo(String className, String memberName) {
-            this(new StringView(className), new StringView(memberName));
-        }
-
-        MemberInfo(StringView className, StringView memberName, StringView descriptor) {
-            this.className = className;
-            this.memberName = memberName;
-            this.descriptor = descriptor;
-        }
-
-        MemberInfo(String className, String memberName, String descriptor) {
-            this(new StringView(className), new StringView(memberName), new StringView(descriptor));
-        }
-
-        @Override
-        public boolean equals(Object obj) {
-            if (!(obj instanceof MemberInfo)) return false;
-            MemberInfo m = (MemberInfo) obj;
-            return this.className.equals(m.className)
-                    && this.memberName.equals(m.memberName)
-                    && Objects.equals(this.descriptor, m.descriptor);
-        }
-
-        @Override
-        public int hashCode() {
-            return ((Objects.hashCode(descriptor) * 31 + memberName.hashCode()) * 31) + className.hashCode();
-        }
-
-        /*
-        @Override
-        public int compareTo(MemberInfo o) {
-            int cComp = this.className.compareTo(o.className);
-            if (cComp != 0) return cComp;
-            int mComp = this.memberName.compareTo(o.memberName);
-            if (mComp != 0) return mComp;
-            if (this.descriptor == null) return o.descriptor == null ? 0 : -1;
-            if (o.descriptor == null) return 1;
-            return this.descriptor.compareTo(o.descriptor);
-        }
-        */
-
-        @Override
-        public String toString() {
-            return className + "." + memberName + (descriptor != null ? descriptor : "");
-        }
-    }
 }
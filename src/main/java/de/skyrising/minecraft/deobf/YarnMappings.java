@@ -2,44 +2,72 @@ package de.skyrising.minecraft.deobf;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
-import de.skyrising.util.StringView;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URL;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.attribute.FileTime;
+import java.nio.file.StandardCopyOption;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.zip.GZIPInputStream;
 
+/**
+ * Loads yarn mappings through a cache in the temp directory, which keeps every version side by side:
+ * {@code latest/<game version>} holds the latest yarn version, {@code tiny/} the downloaded mappings and
+ * {@code compiled/} their {@link CompiledMappings}.
+ */
 public final class YarnMappings {
     private static final Path CACHE_DIR = Paths.get(System.getProperty("java.io.tmpdir"), "fabric-yarn-cache");
+    private static final int LOAD_THREADS = Runtime.getRuntime().availableProcessors();
     private YarnMappings() {}
 
+    /**
+     * @return the latest yarn version for the game version, cached for 24 hours per game version
+     */
     public static String getLatestVersion(String gameVersion) throws IOException {
-        Path versionFile = CACHE_DIR.resolve("version");
+        Path versionFile = CACHE_DIR.resolve("latest").resolve(gameVersion);
         if (Files.exists(versionFile) && Files.getLastModifiedTime(versionFile).toInstant().until(Instant.now(), ChronoUnit.HOURS) < 24) {
             System.out.println("Loading cached latest version from " + Files.getLastModifiedTime(versionFile));
-            String version = new String(Files.readAllBytes(versionFile), StandardCharsets.UTF_8);
-            String v = version.substring(version.lastIndexOf(':') + 1);
-            if (v.startsWith(gameVersion)) return version;
-            System.out.printf("%s != %s\n", v, gameVersion);
+            return new String(Files.readAllBytes(versionFile), StandardCharsets.UTF_8);
         }
         System.out.println("Querying latest mappings for " + gameVersion);
         URL url = new URL("https://meta.fabricmc.net/v2/versions/yarn/" + gameVersion);
         JsonArray json = new Gson().fromJson(new InputStreamReader(url.openStream()), JsonArray.class);
+        if (json.size() == 0) throw new IOException("No yarn mappings for " + gameVersion);
         String version = json.get(0).getAsJsonObject().get("maven").getAsString();
-        if (Files.exists(versionFile) && new String(Files.readAllBytes(versionFile), StandardCharsets.UTF_8).equals(version)) {
-            Files.setLastModifiedTime(versionFile, FileTime.from(Instant.now()));
-        }
+        Files.createDirectories(versionFile.getParent());
+        Files.write(versionFile, version.getBytes(StandardCharsets.UTF_8));
         return version;
     }
 
     public static Mappings load(String yarnVersion) throws IOException {
+        Path compiled = CACHE_DIR.resolve("compiled").resolve(fileName(yarnVersion) + ".mappings");
+        if (Files.exists(compiled)) {
+            try {
+                CompiledMappings mappings = CompiledMappings.open(compiled);
+                mappings.setVersion(yarnVersion);
+                return mappings;
+            } catch (IOException e) {
+                System.out.println("Could not open compiled mappings: " + e);
+            }
+        }
+        TinyMappings mappings = loadTiny(yarnVersion);
+        mappings.setVersion(yarnVersion);
+        try {
+            CompiledMappings.write(mappings, compiled);
+        } catch (IOException e) {
+            System.out.println("Could not compile mappings: " + e);
+        }
+        return mappings;
+    }
+
+    private static TinyMappings loadTiny(String yarnVersion) throws IOException {
         System.out.println("Loading " + yarnVersion);
         String[] splitVersion = yarnVersion.split(":");
         Path loomCached = Paths.get(System.getProperty("user.home"),
@@ -47,22 +75,33 @@ public final class YarnMappings {
                 splitVersion[0] + "." + splitVersion[1] + "-tiny-" + splitVersion[2].replace("+build.", "-"));
         if (Files.exists(loomCached)) {
             System.out.println("Loading from fabric-loom cache");
-            return TinyMappings.load(Files.newByteChannel(loomCached));
+            return TinyMappings.load(Files.newByteChannel(loomCached), LOAD_THREADS);
         }
-        Files.createDirectories(CACHE_DIR);
-        Path versionFile = CACHE_DIR.resolve("version");
-        Path mappingsFile = CACHE_DIR.resolve("mappings");
-        if (!Files.exists(versionFile) || !new String(Files.readAllBytes(versionFile), StandardCharsets.UTF_8).equals(yarnVersion)) {
+        Path mappingsFile = CACHE_DIR.resolve("tiny").resolve(fileName(yarnVersion) + ".tiny");
+        if (!Files.exists(mappingsFile)) {
             String dir = splitVersion[0].replace('.', '/') + "/" + splitVersion[1] + "/" + splitVersion[2];
             String file = splitVersion[1] + "-" + splitVersion[2] + "-tiny.gz";
             URL url = new URL("https://maven.fabricmc.net/" + dir + "/" + file);
-            Files.write(versionFile, yarnVersion.getBytes(StandardCharsets.UTF_8));
-            Files.copy(new GZIPInputStream(url.openStream()), mappingsFile);
-            System.out.println("Caching to " + CACHE_DIR);
+            Files.createDirectories(mappingsFile.getParent());
+            // download next to the target so other processes never see a partial file
+            Path tmp = Files.createTempFile(mappingsFile.getParent(), "mappings", ".tmp");
+            try {
+                try (InputStream in = new GZIPInputStream(url.openStream())) {
+                    Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
+                }
+                Files.move(tmp, mappingsFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+            System.out.println("Cached to " + mappingsFile);
         } else {
             System.out.println("Loading from cache");
         }
-        return TinyMappings.load(Files.newByteChannel(mappingsFile));
+        return TinyMappings.load(FileChannel.open(mappingsFile), LOAD_THREADS);
+    }
+
+    private static String fileName(String yarnVersion) {
+        return yarnVersion.replace(':', '_');
     }
 
     public static Mappings loadLatest(String gameVersion) throws IOException {
@@ -0,0 +1,66 @@
+package de.skyrising.util;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Mutable, reusable view of a byte range as a sequence of ISO-8859-1 characters.
+ * Meant for scanning ASCII syntax in UTF-8 data without decoding it first.
+ */
+public final class ByteSlice implements CharSequence {
+    private byte[] bytes;
+    private int offset;
+    private int length;
+
+    public ByteSlice() {}
+
+    public ByteSlice(byte[] bytes, int off, int len) {
+        set(bytes, off, len);
+    }
+
+    public ByteSlice set(byte[] bytes, int off, int len) {
+        this.bytes = bytes;
+        this.offset = off;
+        this.length = len;
+        return this;
+    }
+
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) (bytes[offset + index] & 0xff);
+    }
+
+    public boolean startsWith(byte[] prefix) {
+        if (prefix.length > length) return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[offset + i] != prefix[i]) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length || end < start) throw new StringIndexOutOfBoundsException("start=" + start + ", end=" + end + ", length=" + length);
+        return new ByteSlice(bytes, offset + start, end - start);
+    }
+
+    /**
+     * @return the bytes decoded as UTF-8
+     */
+    @Override
+    public String toString() {
+        return new String(bytes, offset, length, StandardCharsets.UTF_8);
+    }
+}
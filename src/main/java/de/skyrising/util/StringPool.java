@@ -0,0 +1,214 @@
+package de.skyrising.util;
+
+import java.util.Arrays;
+
+/**
+ * Deduplicating string pool: every distinct string is stored once in a shared {@code char} arena and identified by
+ * an {@code int} id, so equal strings of the same pool have equal ids.
+ * <p>
+ * New entries can also be built in place with {@link #append(char)} and friends followed by {@link #commit()},
+ * which avoids an intermediate copy for derived strings. Not thread-safe for writers; concurrent readers are fine
+ * once all writes are done.
+ */
+public final class StringPool {
+    private char[] chars = new char[1024];
+    private int charCount;
+    private int[] offsets = new int[64];
+    private int[] hashes = new int[64];
+    private int count;
+    // id + 1 of the entry in each slot, 0 for empty slots
+    private int[] table = new int[128];
+    private String[] strings = new String[64];
+    private int pendingStart = -1;
+
+    public int size() {
+        return count;
+    }
+
+    public int length(int id) {
+        return offsets[id + 1] - offsets[id];
+    }
+
+    public char charAt(int id, int index) {
+        return chars[offsets[id] + index];
+    }
+
+    public String toString(int id) {
+        String s = strings[id];
+        if (s == null) strings[id] = s = new String(chars, offsets[id], length(id));
+        return s;
+    }
+
+    public int intern(CharSequence s) {
+        return intern(s, 0, s.length());
+    }
+
+    public int intern(CharSequence s, int off, int len) {
+        int id = find(s, off, len);
+        if (id >= 0) return id;
+        begin();
+        ensureChars(len);
+        if (s instanceof Utf8String) {
+            ((Utf8String) s).getChars(off, len, chars, charCount);
+            charCount += len;
+        } else {
+            for (int i = 0; i < len; i++) chars[charCount++] = s.charAt(off + i);
+        }
+        return commit();
+    }
+
+    /**
+     * @return the id of the string or -1 if it isn't in the pool
+     */
+    public int find(CharSequence s) {
+        return find(s, 0, s.length());
+    }
+
+    public int find(CharSequence s, int off, int len) {
+        int h = hash(s, off, len);
+        int mask = table.length - 1;
+        for (int slot = mix(h) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            int id = table[slot] - 1;
+            if (hashes[id] != h || length(id) != len) continue;
+            if (regionMatches(offsets[id], s, off, len)) return id;
+        }
+        return -1;
+    }
+
+    /**
+     * Looks up a substring of an entry of another pool
+     */
+    public int find(StringPool pool, int id, int start, int end) {
+        char[] s = pool.chars;
+        int off = pool.offsets[id] + start;
+        int len = end - start;
+        int h = 0;
+        for (int i = 0; i < len; i++) h = 31 * h + s[off + i];
+        int mask = table.length - 1;
+        for (int slot = mix(h) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            int found = table[slot] - 1;
+            if (hashes[found] != h || length(found) != len) continue;
+            if (regionMatches(offsets[found], s, off, len)) return found;
+        }
+        return -1;
+    }
+
+    public void append(char c) {
+        begin();
+        ensureChars(1);
+        chars[charCount++] = c;
+    }
+
+    public void append(StringPool pool, int id) {
+        append(pool, id, 0, pool.length(id));
+    }
+
+    public void append(StringPool pool, int id, int start, int end) {
+        begin();
+        int len = end - start;
+        ensureChars(len);
+        System.arraycopy(pool.chars, pool.offsets[id] + start, chars, charCount, len);
+        charCount += len;
+    }
+
+    /**
+     * Interns the characters appended since the last commit
+     *
+     * @return the id of the appended string
+     */
+    public int commit() {
+        begin();
+        int start = pendingStart;
+        int len = charCount - start;
+        pendingStart = -1;
+        int h = 0;
+        for (int i = start; i < charCount; i++) h = 31 * h + chars[i];
+        int mask = table.length - 1;
+        int slot = mix(h) & mask;
+        for (; table[slot] != 0; slot = (slot + 1) & mask) {
+            int id = table[slot] - 1;
+            if (hashes[id] != h || length(id) != len) continue;
+            if (regionMatches(offsets[id], chars, start, len)) {
+                charCount = start;
+                return id;
+            }
+        }
+        int id = count++;
+        if (count >= offsets.length) {
+            int capacity = Math.max(16, count * 2);
+            offsets = Arrays.copyOf(offsets, capacity);
+            hashes = Arrays.copyOf(hashes, capacity);
+            strings = Arrays.copyOf(strings, capacity);
+        }
+        offsets[id] = start;
+        offsets[count] = charCount;
+        hashes[id] = h;
+        table[slot] = id + 1;
+        if (count * 2 > table.length) rehash();
+        return id;
+    }
+
+    /**
+     * Releases unused capacity once no more strings will be added
+     */
+    public void trim() {
+        chars = Arrays.copyOf(chars, charCount);
+        offsets = Arrays.copyOf(offsets, count + 1);
+        hashes = Arrays.copyOf(hashes, count);
+        strings = Arrays.copyOf(strings, count);
+    }
+
+    /**
+     * @return an estimate of the memory held by the pool in bytes, not counting cached {@link String}s
+     */
+    public long estimateSize() {
+        return 2L * chars.length + 4L * (offsets.length + hashes.length + table.length) + 4L * strings.length;
+    }
+
+    private void begin() {
+        if (pendingStart < 0) pendingStart = charCount;
+    }
+
+    private void ensureChars(int n) {
+        if (charCount + n <= chars.length) return;
+        chars = Arrays.copyOf(chars, Math.max(chars.length * 2, charCount + n));
+    }
+
+    private boolean regionMatches(int offset, CharSequence s, int off, int len) {
+        for (int i = 0; i < len; i++) {
+            if (chars[offset + i] != s.charAt(off + i)) return false;
+        }
+        return true;
+    }
+
+    private boolean regionMatches(int offset, char[] s, int off, int len) {
+        for (int i = 0; i < len; i++) {
+            if (chars[offset + i] != s[off + i]) return false;
+        }
+        return true;
+    }
+
+    private void rehash() {
+        int[] table = new int[this.table.length * 2];
+        int mask = table.length - 1;
+        for (int id = 0; id < count; id++) {
+            int slot = mix(hashes[id]) & mask;
+            while (table[slot] != 0) slot = (slot + 1) & mask;
+            table[slot] = id + 1;
+        }
+        this.table = table;
+    }
+
+    private static int hash(CharSequence s, int off, int len) {
+        if (s instanceof Utf8String) return ((Utf8String) s).hashCode(off, len);
+        if (s instanceof String && off == 0 && len == s.length()) return s.hashCode();
+        int h = 0;
+        for (int i = 0; i < len; i++) h = 31 * h + s.charAt(off + i);
+        return h;
+    }
+
+    private static int mix(int h) {
+        h *= 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+}
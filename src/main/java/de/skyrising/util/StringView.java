@@ -44,6 +44,7 @@ public final class StringView implements CharSequence {
     public int hashCode() {
         if (hash != 0) return hash;
         if (trimmedValue != null) return hash = trimmedValue.hashCode();
+        if (value instanceof Utf8String) return hash = ((Utf8String) value).hashCode(offset, length);
         int end = offset + length;
         int h = 0;
         for (int i = offset; i < end; i++) {
@@ -88,6 +89,29 @@ public final class StringView implements CharSequence {
         return segments.toArray(new StringView[0]);
     }
 
+    /**
+     * Splits without allocating: the end offset of each segment is stored in {@code ends}, segment {@code i} starts
+     * after the end of segment {@code i - 1}. Like {@link #split(CharSequence, char)}, an empty last segment is dropped.
+     *
+     * @return the number of segments, which may be larger than {@code ends.length}; only the ones that fit are stored
+     */
+    public static int split(CharSequence s, char c, int[] ends) {
+        int len = s.length();
+        int count = 0;
+        int prevEnd = 0;
+        for (int i = 0; i < len; i++) {
+            if (s.charAt(i) != c) continue;
+            if (count < ends.length) ends[count] = i;
+            count++;
+            prevEnd = i + 1;
+        }
+        if (prevEnd != len) {
+            if (count < ends.length) ends[count] = len;
+            count++;
+        }
+        return count;
+    }
+
     public static StringView[] split(byte[] s, char c) {
         return split(new Utf8String(s), c);
     }
@@ -2,14 +2,60 @@ package de.skyrising.util;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.LongBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
 
+/**
+ * Splits a channel into lines at {@code \n}, dropping a {@code \r} directly before it.
+ * <p>
+ * {@link #nextLine(ByteSlice)} and {@link #forEachLine(LineConsumer)} hand out views into a reused buffer and only
+ * copy lines that span a refill, {@link #readLine()} copies every line into a new array. All line ends of a buffer
+ * are found in one pass.
+ * <p>
+ * A reader created for a {@link FileChannel} with a window size maps the file in windows of that size instead and
+ * scans the mapped memory directly. Each window starts at the first unfinished line. Lines are still copied out of
+ * the window once, since they are handed out as arrays, so the mode only saves the read calls. Mapping costs more than
+ * that saves for small files, {@link #open} only maps files of at least {@link #MAPPED_THRESHOLD} bytes.
+ */
 public class Utf8LineReader {
+    public static final long DEFAULT_WINDOW_SIZE = 64 << 20;
+    // about where mapping a file starts to beat reading it into an 8 KiB buffer
+    public static final long MAPPED_THRESHOLD = 16 << 10;
+
     private final ReadableByteChannel channel;
-    public final ByteBuffer buf;
-    private final LongBuffer longBuffer;
-    private int read;
+    // reads go here, a direct buffer is copied into array afterwards
+    private final ByteBuffer buf;
+    // lines are views into array[start..]
+    private final byte[] array;
+    private final ByteBuffer words;
+    private int start;
+    private int limit;
+    private int scanned;
+    private final int[] ends;
+    private int endCount;
+    private int endIndex;
+    private boolean eof;
+    // lines spanning a refill or window are assembled here
+    private byte[] carry = new byte[64];
+    private int carryLength;
+
+    // state of the mapped mode
+    private final FileChannel fileChannel;
+    private final long windowSize;
+    private MappedByteBuffer window;
+    private long windowPosition;
+    private int windowOffset;
+
+    /**
+     * Receives a line as a view that is only valid during the call
+     */
+    @FunctionalInterface
+    public interface LineConsumer {
+        void accept(byte[] bytes, int off, int len) throws IOException;
+    }
 
     public Utf8LineReader(ReadableByteChannel channel) {
         this(channel, 1024, true);
@@ -18,91 +64,252 @@ public class Utf8LineReader {
     public Utf8LineReader(ReadableByteChannel channel, int bufSize, boolean direct) {
         this.channel = channel;
         this.buf = direct ? ByteBuffer.allocateDirect(bufSize) : ByteBuffer.allocate(bufSize);
-        this.longBuffer = this.buf.asLongBuffer();
+        this.array = direct ? new byte[bufSize] : buf.array();
+        this.words = ByteBuffer.wrap(array).order(ByteOrder.LITTLE_ENDIAN);
+        this.ends = new int[Math.min(1024, bufSize)];
+        this.fileChannel = null;
+        this.windowSize = 0;
     }
 
     /**
-     * Finds the first 8 byte block containing \n
-     * @param start Starting buffer offset in bytes
-     * @return Starting offset of the block containing \n
+     * Creates a reader that maps the file from its current position in windows of at most {@code windowSize} bytes
      */
-    private int findEndOfLineApprox(int start) {
-        int i = start;
-        int lpos = start >> 3;
-        int lread = this.read >> 3;
-        for (; lpos < lread; lpos++) {
-            long l = longBuffer.get(lpos);
-            l ^= 0x0a0a0a0a0a0a0a0aL; // '\n' = 0x0a
-            // http://graphics.stanford.edu/~seander/bithacks.html#ZeroInWord
-            if (((l - 0x0101010101010101L) & ~l & 0x8080808080808080L) != 0) {
-                return i;
+    public Utf8LineReader(FileChannel channel, long windowSize) throws IOException {
+        if (windowSize < 8 || windowSize > Integer.MAX_VALUE) throw new IllegalArgumentException("windowSize=" + windowSize);
+        this.channel = channel;
+        this.buf = null;
+        this.array = null;
+        this.words = null;
+        this.ends = null;
+        this.fileChannel = channel;
+        this.windowSize = windowSize;
+        this.windowPosition = channel.position();
+    }
+
+    /**
+     * Creates a mapped reader for files of at least {@link #MAPPED_THRESHOLD} remaining bytes, otherwise a reader
+     * with a heap buffer of {@code bufSize} bytes
+     */
+    public static Utf8LineReader open(ReadableByteChannel channel, int bufSize) throws IOException {
+        if (channel instanceof FileChannel) {
+            FileChannel fileChannel = (FileChannel) channel;
+            if (fileChannel.size() - fileChannel.position() >= MAPPED_THRESHOLD) {
+                return new Utf8LineReader(fileChannel, DEFAULT_WINDOW_SIZE);
             }
-            i = (lpos + 1) << 3;
         }
-        return lpos << 3;
+        return new Utf8LineReader(channel, bufSize, false);
+    }
+
+    public boolean isMapped() {
+        return fileChannel != null;
+    }
+
+    public byte[] readLine() throws IOException {
+        ByteSlice line = new ByteSlice();
+        if (!nextLine(line)) return null;
+        return Arrays.copyOfRange(line.getBytes(), line.getOffset(), line.getOffset() + line.length());
     }
 
     /**
-     * Finds the position of \n
-     * @param start Starting buffer offset in bytes
-     * @return offset of \n, or ~offset if \r was found before \n
+     * Reads the next line without copying it into a new array
+     *
+     * @param line set to the line, valid until the next call
+     * @return false at the end of the channel
      */
-    private int findEndOfLine(int start) {
-        int i = start;
-        // find actual position of \n
-        boolean cr = false;
-        int read = this.read;
-        for (; i < read; i++) {
-            byte b = buf.get(i);
-            if (b == '\n') {
-                break;
+    public boolean nextLine(ByteSlice line) throws IOException {
+        if (fileChannel != null) return nextMappedLine(line);
+        while (true) {
+            if (endIndex < endCount) {
+                int end = ends[endIndex++];
+                setLine(line, end, true);
+                start = end + 1;
+                return true;
+            }
+            if (scanned < limit) {
+                findLineEnds();
+                continue;
+            }
+            if (eof) {
+                if (start == limit && carryLength == 0) return false;
+                setLine(line, limit, false);
+                start = limit;
+                return true;
             }
-            cr = b == '\r';
+            fill();
         }
-        return cr ? ~i : i;
     }
 
-    private static byte[] get(ByteBuffer buf, int len) {
-        byte[] newBytes = new byte[len];
-        buf.get(newBytes, 0 , len);
-        return newBytes;
+    /**
+     * Calls the consumer for every remaining line, see {@link #nextLine(ByteSlice)}
+     */
+    public void forEachLine(LineConsumer consumer) throws IOException {
+        ByteSlice line = new ByteSlice();
+        while (nextLine(line)) {
+            consumer.accept(line.getBytes(), line.getOffset(), line.length());
+        }
     }
 
-    private static byte[] append(byte[] base, ByteBuffer buf, int len) {
-        byte[] newBytes = new byte[base.length + len];
-        System.arraycopy(base, 0, newBytes, 0, base.length);
-        buf.get(newBytes, base.length, len);
-        return newBytes;
+    private void setLine(ByteSlice line, int end, boolean stripCr) {
+        int len = end - start;
+        if (carryLength == 0) {
+            if (stripCr && len > 0 && array[end - 1] == '\r') len--;
+            line.set(array, start, len);
+            return;
+        }
+        appendCarry(start, len);
+        len = carryLength;
+        carryLength = 0;
+        if (stripCr && len > 0 && carry[len - 1] == '\r') len--;
+        line.set(carry, 0, len);
     }
 
-    public byte[] readLine() throws IOException {
-        if (read < 0) return null;
-        byte[] bytes = null;
+    private void appendCarry(int off, int len) {
+        ensureCarry(len);
+        System.arraycopy(array, off, carry, carryLength, len);
+        carryLength += len;
+    }
+
+    private void ensureCarry(int len) {
+        if (carryLength + len > carry.length) {
+            carry = Arrays.copyOf(carry, Math.max(carry.length * 2, carryLength + len));
+        }
+    }
+
+    /**
+     * Moves the unfinished line to the start of the buffer, or into the carry array if it fills the whole buffer,
+     * and reads more data behind it
+     */
+    private void fill() throws IOException {
+        if (start > 0) {
+            System.arraycopy(array, start, array, 0, limit - start);
+            limit -= start;
+            scanned -= start;
+            start = 0;
+        } else if (limit == array.length) {
+            appendCarry(0, limit);
+            limit = 0;
+            scanned = 0;
+        }
+        ByteBuffer buf = this.buf;
+        if (buf.hasArray()) {
+            buf.limit(array.length).position(limit);
+        } else {
+            buf.clear().limit(array.length - limit);
+        }
+        int n = channel.read(buf);
+        if (n < 0) {
+            eof = true;
+            return;
+        }
+        if (!buf.hasArray()) {
+            buf.flip();
+            buf.get(array, limit, n);
+        }
+        limit += n;
+    }
+
+    /**
+     * Records the positions of all \n in array[scanned..limit], 8 bytes at a time, until the ends array is full
+     */
+    private void findLineEnds() {
+        int[] ends = this.ends;
+        int max = ends.length;
+        int limit = this.limit;
+        int n = 0;
+        int i = scanned;
+        for (; i + 8 <= limit && n <= max - 8; i += 8) {
+            long t = newlines(words.getLong(i));
+            while (t != 0) {
+                ends[n++] = i + (Long.numberOfTrailingZeros(t) >>> 3);
+                t &= t - 1;
+            }
+        }
+        for (; i < limit && n < max; i++) {
+            if (array[i] == '\n') ends[n++] = i;
+        }
+        scanned = i;
+        endCount = n;
+        endIndex = 0;
+    }
+
+    /**
+     * @param l 8 bytes in little endian order
+     * @return a mask with the high bit set exactly for the bytes that are \n
+     */
+    private static long newlines(long l) {
+        l ^= 0x0a0a0a0a0a0a0a0aL; // '\n' = 0x0a
+        // http://graphics.stanford.edu/~seander/bithacks.html#ZeroInWord, variant without false positives
+        long t = (l & 0x7f7f7f7f7f7f7f7fL) + 0x7f7f7f7f7f7f7f7fL;
+        return ~(t | l | 0x7f7f7f7f7f7f7f7fL);
+    }
+
+    private boolean nextMappedLine(ByteSlice line) throws IOException {
         while (true) {
-            if (read == 0) {
-                read = channel.read(buf);
-                buf.rewind();
-                if (read < 0) {
-                    return bytes;
+            if (window == null || windowOffset == window.limit()) {
+                if (window != null) windowPosition += window.limit();
+                if (!map(windowPosition)) {
+                    if (carryLength == 0) return false;
+                    line.set(carry, 0, carryLength);
+                    carryLength = 0;
+                    return true;
                 }
             }
-            int i = findEndOfLine(findEndOfLineApprox(buf.position()));
-            boolean cr = i < 0;
-            if (cr) i = ~i;
-            int len = i - buf.position();
-            if (cr) len--;
-            bytes = bytes == null ? get(buf, len) : append(bytes, buf, len);
-            if (i == read - 1) {
-                buf.rewind();
-                read = 0;
-                return bytes;
+            int end = findMappedEndOfLine(windowOffset);
+            if (end >= 0) {
+                copyFromWindow(end - windowOffset);
+                windowOffset = end + 1;
+                int len = carryLength;
+                carryLength = 0;
+                if (len > 0 && carry[len - 1] == '\r') len--;
+                line.set(carry, 0, len);
+                return true;
             }
-            if (i < read) {
-                buf.position(buf.position() + (cr ? 2 : 1));
-                return bytes;
+            if (windowOffset > 0) {
+                // remap so that the unfinished line starts the next window
+                windowPosition += windowOffset;
+                map(windowPosition);
+                continue;
             }
-            buf.rewind();
-            read = 0;
+            // line is longer than a window
+            copyFromWindow(window.limit());
+            windowOffset = window.limit();
+        }
+    }
+
+    private void copyFromWindow(int len) {
+        ensureCarry(len);
+        window.position(windowOffset);
+        window.get(carry, carryLength, len);
+        carryLength += len;
+    }
+
+    /**
+     * @return false if the position is at the end of the file
+     */
+    private boolean map(long position) throws IOException {
+        long size = Math.min(windowSize, fileChannel.size() - position);
+        if (size <= 0) return false;
+        window = fileChannel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        window.order(ByteOrder.LITTLE_ENDIAN);
+        windowPosition = position;
+        windowOffset = 0;
+        return true;
+    }
+
+    /**
+     * @return the offset of the next \n in the window, or -1
+     */
+    private int findMappedEndOfLine(int from) {
+        MappedByteBuffer window = this.window;
+        int limit = window.limit();
+        int i = from;
+        for (; i + 8 <= limit; i += 8) {
+            long t = newlines(window.getLong(i));
+            if (t != 0) return i + (Long.numberOfTrailingZeros(t) >>> 3);
+        }
+        for (; i < limit; i++) {
+            if (window.get(i) == '\n') return i;
         }
+        return -1;
     }
 }
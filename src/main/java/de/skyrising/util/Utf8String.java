@@ -3,40 +3,89 @@ package de.skyrising.util;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
+/**
+ * Character sequence over UTF-8 bytes. The ASCII prefix is read from the bytes directly, the rest is only decoded
+ * when a character past it is accessed.
+ */
 public class Utf8String implements CharSequence {
+    private static final ThreadLocal<CharsetDecoder> DECODER = ThreadLocal.withInitial(StandardCharsets.UTF_8::newDecoder);
+
     private final byte[] value;
-    private final char[] charValue;
+    private volatile char[] charValue;
+    // number of leading ASCII bytes, which are also the first chars
+    private final int asciiLength;
     private final int length;
     private int hash;
 
     public Utf8String(byte[] value) {
         this.value = value;
-        for (int i = 0; i < value.length; i++) {
-            if (value[i] < 0) {
-                try {
-                    CharBuffer buf = StandardCharsets.UTF_8.newDecoder().decode(ByteBuffer.wrap(value));
-                    length = buf.limit();
-                    charValue = new char[length];
-                    buf.get(charValue);
-                } catch (CharacterCodingException e) {
-                    throw new RuntimeException(e);
-                }
-                return;
-            }
-        }
-        charValue = null;
-        length = value.length;
+        int ascii = asciiLength(value);
+        this.asciiLength = ascii;
+        this.length = ascii == value.length ? ascii : ascii + charCount(value, ascii);
     }
 
     Utf8String(char[] charValue) {
         this.value = null;
         this.charValue = charValue;
+        this.asciiLength = 0;
         this.length = charValue.length;
     }
 
+    /**
+     * @return the number of leading bytes without the high bit set, checked 8 bytes at a time
+     */
+    private static int asciiLength(byte[] value) {
+        int i = 0;
+        int end = value.length;
+        if (end >= 8) {
+            ByteBuffer words = ByteBuffer.wrap(value);
+            for (; i + 8 <= end; i += 8) {
+                if ((words.getLong(i) & 0x8080808080808080L) != 0) break;
+            }
+        }
+        for (; i < end; i++) {
+            if (value[i] < 0) return i;
+        }
+        return end;
+    }
+
+    /**
+     * Counts the UTF-16 chars of valid UTF-8 without decoding it: every byte except continuation bytes starts a char,
+     * 4 byte sequences become a surrogate pair
+     */
+    private static int charCount(byte[] value, int from) {
+        int count = 0;
+        for (int i = from; i < value.length; i++) {
+            int b = value[i] & 0xff;
+            if ((b & 0xc0) != 0x80) count++;
+            if ((b & 0xf8) == 0xf0) count++;
+        }
+        return count;
+    }
+
+    private char[] decode() {
+        char[] chars = charValue;
+        if (chars != null) return chars;
+        chars = new char[length];
+        for (int i = 0; i < asciiLength; i++) chars[i] = (char) value[i];
+        CharsetDecoder decoder = DECODER.get().reset();
+        CharBuffer out = CharBuffer.wrap(chars, asciiLength, length - asciiLength);
+        CoderResult result = decoder.decode(ByteBuffer.wrap(value, asciiLength, value.length - asciiLength), out, true);
+        if (!result.isError()) result = decoder.flush(out);
+        try {
+            if (result.isError()) result.throwException();
+        } catch (CharacterCodingException e) {
+            throw new RuntimeException(e);
+        }
+        if (out.position() != length) throw new RuntimeException("Malformed UTF-8");
+        return charValue = chars;
+    }
+
     @Override
     public int length() {
         return length;
@@ -44,32 +93,55 @@ public class Utf8String implements CharSequence {
 
     @Override
     public char charAt(int index) {
-        if (charValue != null) return charValue[index];
-        return (char) value[index];
+        if (index < asciiLength) return (char) value[index];
+        return decode()[index];
     }
 
     @Override
     public CharSequence subSequence(int start, int end) {
-        if (charValue != null) {
-            return new Utf8String(Arrays.copyOfRange(charValue, start, end));
+        if (value != null && end <= asciiLength) {
+            return new Utf8String(Arrays.copyOfRange(value, start, end));
         }
-        return new Utf8String(Arrays.copyOfRange(value, start, end));
+        return new Utf8String(Arrays.copyOfRange(decode(), start, end));
     }
 
     @Override
     public String toString() {
-        if (charValue != null) return new String(charValue);
-        return new String(value, StandardCharsets.US_ASCII);
+        if (value != null && asciiLength == value.length) return new String(value, StandardCharsets.US_ASCII);
+        return new String(decode());
     }
 
     @Override
     public int hashCode() {
         if (hash != 0) return hash;
+        return hash = hashCode(0, length);
+    }
+
+    /**
+     * @return the {@link String#hashCode()} of the chars in the range, computed from the bytes inside the ASCII prefix
+     */
+    int hashCode(int off, int len) {
+        int end = off + len;
         int h = 0;
-        for (int i = 0; i < length; i++) {
-            h = h * 31 + charAt(i);
+        if (end <= asciiLength) {
+            byte[] value = this.value;
+            for (int i = off; i < end; i++) h = h * 31 + value[i];
+            return h;
         }
-        return hash = h;
+        for (int i = off; i < end; i++) h = h * 31 + charAt(i);
+        return h;
+    }
+
+    /**
+     * Copies the chars in the range to {@code dst}, from the bytes inside the ASCII prefix
+     */
+    void getChars(int off, int len, char[] dst, int dstOff) {
+        if (off + len <= asciiLength) {
+            byte[] value = this.value;
+            for (int i = 0; i < len; i++) dst[dstOff + i] = (char) value[off + i];
+            return;
+        }
+        System.arraycopy(decode(), off, dst, dstOff, len);
     }
 
     @Override
@@ -78,13 +150,10 @@ public class Utf8String implements CharSequence {
         if (!(obj instanceof Utf8String)) return false;
         Utf8String s = (Utf8String) obj;
         if (s.length != length) return false;
-        if (charValue != null) {
-            if (s.charValue != null) return Arrays.equals(charValue, s.charValue);
-            for (int i = 0; i < length; i++) {
-                if (charAt(i) != s.charAt(i)) return false;
-            }
-            return true;
+        if (value != null && s.value != null) return Arrays.equals(value, s.value);
+        for (int i = 0; i < length; i++) {
+            if (charAt(i) != s.charAt(i)) return false;
         }
-        return Arrays.equals(value, s.value);
+        return true;
     }
 }
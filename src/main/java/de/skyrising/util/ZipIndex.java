@@ -0,0 +1,347 @@
+package de.skyrising.util;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Index of a zip file built from its central directory. Entry data is read with positional reads or from a mapping of
+ * the whole file, so entries can be read concurrently and the compressed bytes can be copied as they are.
+ * <p>
+ * ZIP64 archives and archives spanning multiple disks are not supported.
+ */
+public final class ZipIndex implements Closeable {
+    static final int LOCAL_HEADER = 0x04034b50;
+    static final int CENTRAL_HEADER = 0x02014b50;
+    static final int END_HEADER = 0x06054b50;
+    static final int LOCAL_HEADER_SIZE = 30;
+    static final int CENTRAL_HEADER_SIZE = 46;
+    static final int END_HEADER_SIZE = 22;
+    public static final int STORED = 0;
+    public static final int DEFLATED = 8;
+
+    private final FileChannel channel;
+    // the whole file if it was opened mapped, null otherwise
+    private final ByteBuffer mapped;
+    private final List<Entry> entries;
+    private final Map<String, Entry> byName;
+
+    private ZipIndex(FileChannel channel, ByteBuffer mapped, List<Entry> entries) {
+        this.channel = channel;
+        this.mapped = mapped;
+        this.entries = Collections.unmodifiableList(entries);
+        this.byName = new HashMap<>(entries.size() * 2);
+        for (Entry entry : entries) byName.putIfAbsent(entry.name, entry);
+    }
+
+    public static ZipIndex open(Path file) throws IOException {
+        return open(file, false);
+    }
+
+    /**
+     * @param map whether to map the whole file for reading entries, files of 2 GiB or more are never mapped.
+     *            The entries of a mapped index can still be read with {@link #readAllBytes(Entry)} and
+     *            {@link #getInputStream(Entry)} after closing it.
+     */
+    public static ZipIndex open(Path file, boolean map) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            List<Entry> entries = readCentralDirectory(channel);
+            ByteBuffer mapped = map && channel.size() < Integer.MAX_VALUE ? channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()) : null;
+            return new ZipIndex(channel, mapped, entries);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static List<Entry> readCentralDirectory(FileChannel channel) throws IOException {
+        long size = channel.size();
+        int tailSize = (int) Math.min(size, END_HEADER_SIZE + 0xffff);
+        ByteBuffer tail = readFully(channel, size - tailSize, tailSize);
+        int end = -1;
+        for (int i = tailSize - END_HEADER_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == END_HEADER && i + END_HEADER_SIZE + (tail.getShort(i + 20) & 0xffff) == tailSize) {
+                end = i;
+                break;
+            }
+        }
+        if (end < 0) throw new IOException("Not a zip file");
+        int count = tail.getShort(end + 10) & 0xffff;
+        long cdSize = tail.getInt(end + 12) & 0xffffffffL;
+        long cdOffset = tail.getInt(end + 16) & 0xffffffffL;
+        if (count == 0xffff || cdSize == 0xffffffffL || cdOffset == 0xffffffffL) {
+            throw new IOException("ZIP64 archives are not supported");
+        }
+        if ((tail.getShort(end + 4) | tail.getShort(end + 6)) != 0) throw new IOException("Multi-disk archives are not supported");
+        if (cdOffset + cdSize > size - tailSize + end) throw new IOException("Invalid central directory");
+        ByteBuffer cd = cdSize > 1 << 20
+            ? channel.map(FileChannel.MapMode.READ_ONLY, cdOffset, cdSize).order(ByteOrder.LITTLE_ENDIAN)
+            : readFully(channel, cdOffset, (int) cdSize);
+        List<Entry> entries = new ArrayList<>(count);
+        int pos = 0;
+        for (int i = 0; i < count; i++) {
+            if (pos + CENTRAL_HEADER_SIZE > cdSize || cd.getInt(pos) != CENTRAL_HEADER) {
+                throw new IOException("Invalid central directory header at " + (cdOffset + pos));
+            }
+            int nameLength = cd.getShort(pos + 28) & 0xffff;
+            int extraLength = cd.getShort(pos + 30) & 0xffff;
+            int commentLength = cd.getShort(pos + 32) & 0xffff;
+            byte[] name = new byte[nameLength];
+            cd.position(pos + CENTRAL_HEADER_SIZE);
+            cd.get(name);
+            Entry entry = new Entry(name,
+                cd.getShort(pos + 8) & 0xffff,
+                cd.getShort(pos + 10) & 0xffff,
+                cd.getInt(pos + 12),
+                cd.getInt(pos + 16),
+                cd.getInt(pos + 20) & 0xffffffffL,
+                cd.getInt(pos + 24) & 0xffffffffL,
+                cd.getInt(pos + 38),
+                cd.getInt(pos + 42) & 0xffffffffL);
+            if (entry.method != STORED && entry.method != DEFLATED) {
+                throw new IOException("Unsupported compression method " + entry.method + " for " + entry.name);
+            }
+            entries.add(entry);
+            pos += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+        return entries;
+    }
+
+    static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, position + buf.position()) < 0) throw new IOException("Unexpected end of zip file");
+        }
+        buf.flip();
+        return buf;
+    }
+
+    /**
+     * @return the entries in the order of the central directory
+     */
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * @return the first entry with the name, or null
+     */
+    public Entry getEntry(String name) {
+        return byName.get(name);
+    }
+
+    public boolean isMapped() {
+        return mapped != null;
+    }
+
+    FileChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * @return the offset of the compressed data of the entry, which follows its local header
+     */
+    public long getDataOffset(Entry entry) throws IOException {
+        long offset = entry.dataOffset;
+        if (offset >= 0) return offset;
+        ByteBuffer header;
+        if (mapped != null) {
+            if (entry.localHeaderOffset + LOCAL_HEADER_SIZE > mapped.limit()) throw new IOException("Truncated entry " + entry.name);
+            header = mapped.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            header.position((int) entry.localHeaderOffset);
+            header = header.slice().order(ByteOrder.LITTLE_ENDIAN);
+        } else {
+            header = readFully(channel, entry.localHeaderOffset, LOCAL_HEADER_SIZE);
+        }
+        if (header.getInt(0) != LOCAL_HEADER) throw new IOException("Invalid local header for " + entry.name);
+        offset = entry.localHeaderOffset + LOCAL_HEADER_SIZE + (header.getShort(26) & 0xffff) + (header.getShort(28) & 0xffff);
+        if (offset + entry.compressedSize > (mapped != null ? mapped.limit() : channel.size())) throw new IOException("Truncated entry " + entry.name);
+        return entry.dataOffset = offset;
+    }
+
+    /**
+     * @return a stream of the uncompressed contents of the entry
+     */
+    public InputStream getInputStream(Entry entry) throws IOException {
+        InputStream raw = new RangeInputStream(channel, mapped, getDataOffset(entry), entry.compressedSize);
+        if (entry.method == STORED) return raw;
+        Inflater inflater = new Inflater(true);
+        return new InflaterInputStream(raw, inflater, 8192) {
+            private boolean closed;
+            private boolean eof;
+
+            @Override
+            protected void fill() throws IOException {
+                if (eof) throw new EOFException("Unexpected end of entry " + entry.name);
+                len = in.read(buf, 0, buf.length);
+                if (len < 0) {
+                    // raw inflate may need a dummy byte after the data to finish, like ZipFile supplies
+                    buf[0] = 0;
+                    len = 1;
+                    eof = true;
+                }
+                inf.setInput(buf, 0, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (closed) return;
+                closed = true;
+                inflater.end();
+                super.close();
+            }
+        };
+    }
+
+    /**
+     * Reads and decompresses the whole entry at once, which avoids the buffering of {@link #getInputStream(Entry)}
+     */
+    public byte[] readAllBytes(Entry entry) throws IOException {
+        if (entry.size > Integer.MAX_VALUE - 8 || entry.compressedSize > Integer.MAX_VALUE - 8) {
+            throw new IOException("Entry " + entry.name + " is too large");
+        }
+        long offset = getDataOffset(entry);
+        byte[] compressed = new byte[(int) entry.compressedSize];
+        if (mapped != null) {
+            ByteBuffer data = mapped.duplicate();
+            data.position((int) offset);
+            data.get(compressed);
+        } else {
+            ByteBuffer data = ByteBuffer.wrap(compressed);
+            while (data.hasRemaining()) {
+                if (channel.read(data, offset + data.position()) < 0) throw new IOException("Unexpected end of zip file");
+            }
+        }
+        if (entry.method == STORED) return compressed;
+        if (entry.size == 0) return new byte[0];
+        byte[] bytes = new byte[(int) entry.size];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed);
+            int length = 0;
+            boolean dummy = false;
+            while (!inflater.finished()) {
+                int n = inflater.inflate(bytes, length, bytes.length - length);
+                length += n;
+                if (n > 0) continue;
+                if (inflater.needsInput() && !dummy) {
+                    // see getInputStream
+                    inflater.setInput(new byte[1]);
+                    dummy = true;
+                } else if (inflater.needsInput() || inflater.needsDictionary() || length == bytes.length) {
+                    break;
+                }
+            }
+            if (!inflater.finished() || length != bytes.length) throw new IOException("Invalid compressed data for " + entry.name);
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid compressed data for " + entry.name, e);
+        } finally {
+            inflater.end();
+        }
+        return bytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    public static final class Entry {
+        public final String name;
+        final byte[] rawName;
+        public final int flags;
+        public final int method;
+        // MS-DOS time and date as stored in the headers
+        public final int dosTime;
+        public final int crc;
+        public final long compressedSize;
+        public final long size;
+        final int externalAttributes;
+        final long localHeaderOffset;
+        private volatile long dataOffset = -1;
+
+        Entry(byte[] rawName, int flags, int method, int dosTime, int crc, long compressedSize, long size, int externalAttributes, long localHeaderOffset) {
+            this.name = new String(rawName, StandardCharsets.UTF_8);
+            this.rawName = rawName;
+            this.flags = flags;
+            this.method = method;
+            this.dosTime = dosTime;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.externalAttributes = externalAttributes;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+
+        public boolean isDirectory() {
+            return name.endsWith("/");
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private static final class RangeInputStream extends InputStream {
+        private final FileChannel channel;
+        // read instead of the channel if not null
+        private final ByteBuffer mapped;
+        private long position;
+        private final long end;
+
+        RangeInputStream(FileChannel channel, ByteBuffer mapped, long position, long length) {
+            this.channel = channel;
+            this.mapped = mapped == null ? null : mapped.duplicate();
+            this.position = position;
+            this.end = position + length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (position >= end) return -1;
+            if (mapped != null) {
+                int n = (int) Math.min(len, end - position);
+                mapped.position((int) position);
+                mapped.get(b, off, n);
+                position += n;
+                return n;
+            }
+            int n = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - position)), position);
+            if (n < 0) throw new IOException("Unexpected end of zip file");
+            position += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, end - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, end - position);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package de.skyrising.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes a zip file sequentially. Unlike {@link java.util.zip.ZipOutputStream} it accepts data that is already
+ * compressed, either copied raw from a {@link ZipIndex} or deflated ahead of time with {@link Deflated}, so
+ * compression can happen on other threads than the writer.
+ * <p>
+ * Like {@link ZipIndex} it doesn't write ZIP64 archives, which limits the output to 4 GiB and 65535 entries.
+ */
+public final class ZipWriter implements Closeable {
+    private static final int VERSION = 20;
+    private static final int FLAG_DATA_DESCRIPTOR = 1 << 3;
+    private static final int FLAG_UTF8 = 1 << 11;
+    private final WritableByteChannel out;
+    private final ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+    private final ByteBuffer header = ByteBuffer.allocate(ZipIndex.CENTRAL_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private long position;
+    private int count;
+    private boolean closed;
+
+    public ZipWriter(WritableByteChannel out) {
+        this.out = out;
+    }
+
+    /**
+     * Copies an entry without decompressing it
+     */
+    public void copyRaw(ZipIndex zip, ZipIndex.Entry entry) throws IOException {
+        long dataOffset = zip.getDataOffset(entry);
+        writeLocalHeader(entry.rawName, entry.flags, entry.method, entry.dosTime, entry.crc, entry.compressedSize, entry.size);
+        FileChannel in = zip.getChannel();
+        long remaining = entry.compressedSize;
+        while (remaining > 0) {
+            long n = in.transferTo(dataOffset + entry.compressedSize - remaining, remaining, out);
+            if (n <= 0) throw new IOException("Could not copy " + entry.name);
+            remaining -= n;
+        }
+        position += entry.compressedSize;
+        writeCentralHeader(entry.rawName, entry.flags, entry.method, entry.dosTime, entry.crc, entry.compressedSize, entry.size, entry.externalAttributes);
+    }
+
+    /**
+     * Writes new contents for an entry, keeping its name, time and attributes
+     */
+    public void write(ZipIndex.Entry entry, Deflated data) throws IOException {
+        if (!data.closed) throw new IllegalStateException("Data for " + entry.name + " isn't finished");
+        int flags = entry.flags & FLAG_UTF8;
+        writeLocalHeader(entry.rawName, flags, ZipIndex.DEFLATED, entry.dosTime, data.crc, data.compressedSize, data.size);
+        writeFully(ByteBuffer.wrap(data.compressed, 0, (int) data.compressedSize));
+        position += data.compressedSize;
+        writeCentralHeader(entry.rawName, flags, ZipIndex.DEFLATED, entry.dosTime, data.crc, data.compressedSize, data.size, entry.externalAttributes);
+    }
+
+    private void writeLocalHeader(byte[] name, int flags, int method, int dosTime, int crc, long compressedSize, long size) throws IOException {
+        if (count == 0xffff) throw new IOException("Too many entries for a zip file without ZIP64");
+        header.clear();
+        header.putInt(ZipIndex.LOCAL_HEADER);
+        header.putShort((short) VERSION);
+        // sizes are always known up front, so no data descriptor follows
+        header.putShort((short) (flags & ~FLAG_DATA_DESCRIPTOR));
+        header.putShort((short) method);
+        header.putInt(dosTime);
+        header.putInt(crc);
+        header.putInt((int) compressedSize);
+        header.putInt((int) size);
+        header.putShort((short) name.length);
+        header.putShort((short) 0);
+        header.flip();
+        writeFully(header);
+        writeFully(ByteBuffer.wrap(name));
+        position += ZipIndex.LOCAL_HEADER_SIZE + name.length;
+    }
+
+    private void writeCentralHeader(byte[] name, int flags, int method, int dosTime, int crc, long compressedSize, long size, int externalAttributes) throws IOException {
+        long localHeaderOffset = position - compressedSize - ZipIndex.LOCAL_HEADER_SIZE - name.length;
+        if (position > 0xffffffffL) throw new IOException("Zip file too large without ZIP64");
+        header.clear();
+        header.putInt(ZipIndex.CENTRAL_HEADER);
+        header.putShort((short) VERSION);
+        header.putShort((short) VERSION);
+        header.putShort((short) (flags & ~FLAG_DATA_DESCRIPTOR));
+        header.putShort((short) method);
+        header.putInt(dosTime);
+        header.putInt(crc);
+        header.putInt((int) compressedSize);
+        header.putInt((int) size);
+        header.putShort((short) name.length);
+        header.putShort((short) 0);
+        header.putShort((short) 0);
+        header.putShort((short) 0);
+        header.putShort((short) 0);
+        header.putInt(externalAttributes);
+        header.putInt((int) localHeaderOffset);
+        centralDirectory.write(header.array(), 0, ZipIndex.CENTRAL_HEADER_SIZE);
+        centralDirectory.write(name);
+        count++;
+    }
+
+    private void writeFully(ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) out.write(buf);
+    }
+
+    /**
+     * Writes the central directory, the channel is left open
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        int size = centralDirectory.size();
+        if (position + size > 0xffffffffL) throw new IOException("Zip file too large without ZIP64");
+        writeFully(ByteBuffer.wrap(centralDirectory.toByteArray()));
+        ByteBuffer end = ByteBuffer.allocate(ZipIndex.END_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        end.putInt(ZipIndex.END_HEADER);
+        end.putShort((short) 0);
+        end.putShort((short) 0);
+        end.putShort((short) count);
+        end.putShort((short) count);
+        end.putInt(size);
+        end.putInt((int) position);
+        end.putShort((short) 0);
+        end.flip();
+        writeFully(end);
+    }
+
+    /**
+     * Deflates the contents of an entry in memory for {@link #write(ZipIndex.Entry, Deflated)}
+     */
+    public static final class Deflated extends OutputStream {
+        private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        private final CRC32 crc32 = new CRC32();
+        private final Buffer buffer = new Buffer();
+        private final DeflaterOutputStream out = new DeflaterOutputStream(buffer, deflater, 64 * 1024);
+        private boolean closed;
+        private byte[] compressed;
+        private int crc;
+        private long size;
+        private long compressedSize;
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (closed) throw new IOException("Closed");
+            crc32.update(b, off, len);
+            size += len;
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            try {
+                out.finish();
+            } finally {
+                deflater.end();
+            }
+            compressed = buffer.array();
+            compressedSize = buffer.size();
+            crc = (int) crc32.getValue();
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        private static final class Buffer extends ByteArrayOutputStream {
+            Buffer() {
+                super(8192);
+            }
+
+            byte[] array() {
+                return buf;
+            }
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package de.skyrising.minecraft.debug;
+
+import de.skyrising.minecraft.deobf.Deobfuscator;
+import de.skyrising.minecraft.deobf.TinyMappings;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Deterministically generates the inputs for the benchmarks: tiny mappings, a game jar whose classes match them,
+ * crash reports, logs and a complete debug bundle.
+ * Run {@link #main} to write them to a directory for inspection.
+ */
+public final class BenchmarkFixtures {
+    public static final String GAME_VERSION = "1.14.4";
+    public static final int CLASSES = 400;
+    public static final int METHODS_PER_CLASS = 8;
+    public static final int FIELDS_PER_CLASS = 4;
+    private static final String[] PACKAGES = {"server", "entity", "world", "block", "item", "util", "network"};
+    private static final String[] NOUNS = {"Entity", "Block", "World", "Chunk", "Item", "Player", "Packet", "Manager", "Handler", "Task"};
+    private static final String[] VERBS = {"tick", "update", "get", "set", "handle", "process", "create", "remove"};
+    private static final String[] DESCRIPTORS = {"()V", "(I)V", "(L%s;)V", "(L%s;I)L%s;", "()Z", "(J)I", "()L%s;", "(Ljava/lang/String;L%s;)V"};
+    private static BenchmarkFixtures instance;
+
+    public final Path root;
+    public final Path mappingsFile;
+    public final Path minecraftDir;
+    public final Path gameJar;
+    public final Path bundle;
+    // class indexes and pruned class paths, instead of the shared ClassIndex.CACHE_DIR
+    public final Path cacheDir;
+    public final List<String> crashLines;
+    private final String[] obfNames = new String[CLASSES];
+    private final String[][] methodDescriptors = new String[CLASSES][METHODS_PER_CLASS];
+    private final Random random = new Random(0x5eed);
+
+    private BenchmarkFixtures(Path root) throws IOException {
+        this.root = root;
+        this.mappingsFile = root.resolve("mappings.tiny");
+        this.minecraftDir = root.resolve("minecraft");
+        this.gameJar = minecraftDir.resolve("versions/" + GAME_VERSION + "/" + GAME_VERSION + ".jar");
+        this.bundle = root.resolve("bundle");
+        this.cacheDir = root.resolve("cache");
+        for (int i = 0; i < CLASSES; i++) obfNames[i] = obfName(i);
+        Files.write(mappingsFile, generateMappings().getBytes(StandardCharsets.UTF_8));
+        Files.createDirectories(gameJar.getParent());
+        Files.write(gameJar, generateJar());
+        this.crashLines = Collections.unmodifiableList(generateCrashReport());
+        generateBundle();
+    }
+
+    public static synchronized BenchmarkFixtures get() throws IOException {
+        if (instance == null) {
+            Path root = Files.createTempDirectory("minecraft-debug-bench");
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    deleteTree(root);
+                } catch (IOException e) {
+                    System.out.println("Could not delete " + root + ": " + e);
+                }
+            }));
+            instance = new BenchmarkFixtures(root);
+        }
+        return instance;
+    }
+
+    /**
+     * Deletes a temporary directory with everything in it
+     */
+    public static void deleteTree(Path root) throws IOException {
+        if (!Files.exists(root)) return;
+        try (Stream<Path> files = Files.walk(root)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) Files.delete(file);
+        }
+    }
+
+    /**
+     * Creates an analyzer for the fixture game and its mappings that keeps its caches in {@link #cacheDir}
+     */
+    public DebugAnalyzer createAnalyzer(Path from, Path to) {
+        DebugAnalyzer analyzer = new DebugAnalyzer(from, to);
+        analyzer.setMinecraftDir(minecraftDir);
+        analyzer.setCacheDir(cacheDir);
+        analyzer.setMappingsProvider(version -> loadMappings());
+        return analyzer;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path root = Paths.get(args[0]);
+        Files.createDirectories(root);
+        new BenchmarkFixtures(root);
+        System.out.println("Generated fixtures in " + root);
+    }
+
+    public byte[] getMappingsBytes() throws IOException {
+        return Files.readAllBytes(mappingsFile);
+    }
+
+    public TinyMappings loadMappings() throws IOException {
+        return TinyMappings.load(Files.newByteChannel(mappingsFile));
+    }
+
+    public Deobfuscator createDeobfuscator(int frameCacheSize) throws IOException {
+        ClassLoader classLoader = new URLClassLoader(new URL[] {gameJar.toUri().toURL()}, null);
+        return new Deobfuscator(loadMappings(), classLoader, null, frameCacheSize);
+    }
+
+    private static String obfName(int index) {
+        StringBuilder sb = new StringBuilder();
+        do {
+            sb.insert(0, (char) ('a' + index % 26));
+            index = index / 26 - 1;
+        } while (index >= 0);
+        return sb.toString();
+    }
+
+    private static int superClass(int index) {
+        return index == 0 ? -1 : index / 2;
+    }
+
+    private String namedClass(int index) {
+        return "net/minecraft/" + PACKAGES[index % PACKAGES.length] + "/" + NOUNS[index % NOUNS.length] + index;
+    }
+
+    private String generateMappings() {
+        StringBuilder sb = new StringBuilder("v1\tofficial\tintermediary\tnamed\n");
+        for (int i = 0; i < CLASSES; i++) {
+            sb.append("CLASS\t").append(obfNames[i]).append("\tnet/minecraft/class_").append(i + 1)
+                    .append('\t').append(namedClass(i)).append('\n');
+        }
+        int methodId = 1, fieldId = 1;
+        for (int i = 0; i < CLASSES; i++) {
+            if (i == 0) {
+                sb.append("METHOD\ta\t()V\ta\tmethod_").append(methodId++).append("\ttick\n");
+            }
+            for (int m = 0; m < METHODS_PER_CLASS; m++) {
+                String template = DESCRIPTORS[random.nextInt(DESCRIPTORS.length)];
+                String desc = String.format(template, obfNames[random.nextInt(CLASSES)], obfNames[random.nextInt(CLASSES)]);
+                methodDescriptors[i][m] = desc;
+                sb.append("METHOD\t").append(obfNames[i]).append('\t').append(desc).append('\t').append(methodName(m))
+                        .append("\tmethod_").append(methodId++).append('\t')
+                        .append(VERBS[m % VERBS.length]).append(NOUNS[(i + m) % NOUNS.length]).append('\n');
+            }
+            for (int f = 0; f < FIELDS_PER_CLASS; f++) {
+                sb.append("FIELD\t").append(obfNames[i]).append("\tI\t").append(methodName(f))
+                        .append("\tfield_").append(fieldId++).append("\tvalue").append(f).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Methods declared by a class are named b, c, ..., a is the root method every class overrides
+     */
+    private static String methodName(int index) {
+        return String.valueOf((char) ('b' + index));
+    }
+
+    private static int lineNumber(int method, int offset) {
+        return 10 + method * 5 + offset;
+    }
+
+    private byte[] generateJar() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (JarOutputStream jar = new JarOutputStream(bytes)) {
+            for (int i = 0; i < CLASSES; i++) {
+                jar.putNextEntry(new JarEntry(obfNames[i] + ".class"));
+                jar.write(generateClass(i));
+                jar.closeEntry();
+            }
+            jar.putNextEntry(new JarEntry("net/minecraft/server/MinecraftServer.class"));
+            jar.write(generateClass(0));
+            jar.closeEntry();
+        }
+        return bytes.toByteArray();
+    }
+
+    private byte[] generateClass(int index) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        int superIndex = superClass(index);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, obfNames[index], null, superIndex < 0 ? "java/lang/Object" : obfNames[superIndex], null);
+        cw.visitSource("SourceFile", null);
+        generateMethod(cw, "a", "()V", 5);
+        for (int m = 0; m < METHODS_PER_CLASS; m++) {
+            generateMethod(cw, methodName(m), methodDescriptors[index][m], lineNumber(m, 0));
+        }
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static void generateMethod(ClassWriter cw, String name, String desc, int firstLine) {
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, name, desc, null, null);
+        mv.visitCode();
+        for (int line = firstLine; line < firstLine + 3; line++) {
+            Label label = new Label();
+            mv.visitLabel(label);
+            mv.visitLineNumber(line, label);
+            mv.visitInsn(Opcodes.NOP);
+        }
+        char ret = desc.charAt(desc.indexOf(')') + 1);
+        if (ret == 'V') {
+            mv.visitInsn(Opcodes.RETURN);
+        } else if (ret == 'L' || ret == '[') {
+            mv.visitInsn(Opcodes.ACONST_NULL);
+            mv.visitInsn(Opcodes.ARETURN);
+        } else {
+            mv.visitInsn(Opcodes.ICONST_0);
+            mv.visitInsn(Opcodes.IRETURN);
+        }
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    private List<String> generateStackTrace(String exception, int depth) {
+        List<String> lines = new ArrayList<>();
+        lines.add(exception);
+        for (int i = 0; i < depth; i++) {
+            int kind = random.nextInt(10);
+            int cls = random.nextInt(CLASSES);
+            if (kind == 0) {
+                lines.add("\tat " + obfNames[cls] + "$$Lambda$" + (100 + cls) + "/" + (123456 + cls) + ".run(Unknown Source)");
+            } else if (kind == 1) {
+                lines.add("\tat " + obfNames[cls] + ".a(SourceFile:" + (5 + random.nextInt(3)) + ")");
+            } else if (kind == 2) {
+                lines.add("\tat java.util.concurrent.ThreadPoolExecutor.runWorker(ThreadPoolExecutor.java:1149)");
+            } else if (kind == 3) {
+                lines.add("\tat sun.reflect.NativeMethodAccessorImpl.invoke0(Native Method)");
+            } else {
+                int m = random.nextInt(METHODS_PER_CLASS);
+                lines.add("\tat " + obfNames[cls] + "." + methodName(m) + "(SourceFile:" + lineNumber(m, random.nextInt(3)) + ")");
+            }
+        }
+        lines.add("\tat java.lang.Thread.run(Thread.java:748)");
+        return lines;
+    }
+
+    private List<String> generateCrashReport() {
+        List<String> lines = new ArrayList<>();
+        lines.add("---- Minecraft Crash Report ----");
+        lines.add("// Why did you do that?");
+        lines.add("");
+        lines.add("Time: 7/20/19 12:00 PM");
+        lines.add("Description: Exception in server tick loop");
+        lines.add("");
+        List<String> trace = generateStackTrace("java.lang.NullPointerException: Exception in server tick loop", 60);
+        for (int i = 0; i < 20; i++) {
+            lines.addAll(trace);
+            lines.addAll(generateStackTrace("Caused by: java.lang.IllegalStateException", 30));
+        }
+        lines.add("");
+        lines.add("-- System Details --");
+        lines.add("Details:");
+        lines.add("\tMinecraft Version: " + GAME_VERSION);
+        lines.add("\tJava Version: 1.8.0_212, Oracle Corporation");
+        lines.add("\tPlayer Count: 2 / 20; [" + obfNames[5] + "['Steve'/1, l='world', x=0.50, y=64.00, z=0.50], "
+                + obfNames[5] + "['Alex'/2, l='world', x=10.50, y=70.00, z=-3.50]]");
+        lines.add("\tIs Modded: Unknown (can't tell)");
+        return lines;
+    }
+
+    private List<String> generateLog(int lines) {
+        List<String> log = new ArrayList<>();
+        while (log.size() < lines) {
+            if (random.nextInt(20) == 0) {
+                log.add("[12:00:00] [Server thread/ERROR]: Encountered an unexpected exception");
+                log.addAll(generateStackTrace("java.lang.RuntimeException: Something went wrong", 20 + random.nextInt(40)));
+            } else {
+                log.add("[12:00:00] [Server thread/INFO]: Preparing spawn area: " + random.nextInt(100) + "%");
+            }
+        }
+        return log;
+    }
+
+    private static byte[] joinLines(List<String> lines) {
+        return (String.join("\n", lines) + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void generateBundle() throws IOException {
+        Files.createDirectories(bundle.resolve("crash-reports"));
+        Files.createDirectories(bundle.resolve("logs"));
+        Files.createDirectories(bundle.resolve("screenshots"));
+        Files.write(bundle.resolve("classpath.txt"), joinLines(Arrays.asList(
+                "/home/user/.minecraft/libraries/com/google/guava/guava/21.0/guava-21.0.jar",
+                "/home/user/.minecraft/versions/" + GAME_VERSION + "/" + GAME_VERSION + ".jar")));
+        Files.write(bundle.resolve("crash-reports/crash-2019-07-20_12.00.00-server.txt"), joinLines(crashLines));
+        Files.write(bundle.resolve("logs/latest.log"), joinLines(generateLog(20000)));
+        for (int i = 1; i <= 3; i++) {
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(bundle.resolve("logs/2019-07-1" + i + "-1.log.gz")))) {
+                out.write(joinLines(generateLog(5000)));
+            }
+        }
+        for (int i = 0; i < 4; i++) {
+            byte[] image = new byte[256 * 1024];
+            random.nextBytes(image);
+            Files.write(bundle.resolve("screenshots/2019-07-20_12.00.0" + i + ".png"), image);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package de.skyrising.minecraft.debug;
+
+import de.skyrising.minecraft.deobf.Deobfuscator;
+import de.skyrising.minecraft.deobf.TestFixtures;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+public class CrashLogTransformerTest {
+    private static String transform(Deobfuscator deobfuscator, String input, int bufSize) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new CrashLogTransformer(deobfuscator, bufSize).transform(
+                Channels.newChannel(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8))),
+                Channels.newChannel(out));
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void transformsFramesAndDetails() throws IOException {
+        Deobfuscator deobfuscator = TestFixtures.createDeobfuscator();
+        String input = "---- Minecraft Crash Report ----\r\n" +
+                "// \u00dcn\u00efc\u00f6d\u00e9 comment\n" +
+                "java.lang.NullPointerException\n" +
+                "\tat a.run(SourceFile:12)\n" +
+                "\tat java.lang.Thread.run(Native Method)\n" +
+                "\tAll players: 1 total; [b['Steve'/1, l='world', x=0.5, y=64.0, z=0.5]]\n" +
+                "\tOther: value";
+        String expected = "---- Minecraft Crash Report ----\n" +
+                "// \u00dcn\u00efc\u00f6d\u00e9 comment\n" +
+                "java.lang.NullPointerException\n" +
+                "\tat net.minecraft.server.MinecraftServer.run(MinecraftServer.java:12)\n" +
+                "\tat java.lang.Thread.run(Native Method)\n" +
+                "\tAll players: 1 total; [Player['Steve'/1, l='world', x=0.5, y=64.0, z=0.5]]\n" +
+                "\tOther: value\n";
+        Assert.assertEquals(expected, transform(deobfuscator, input, 64 * 1024));
+        Assert.assertEquals(expected, transform(deobfuscator, input, 16));
+    }
+}
@@ -0,0 +1,61 @@
+package de.skyrising.minecraft.debug;
+
+import de.skyrising.minecraft.deobf.Deobfuscator;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DebugAnalyzerBenchmark {
+    private BenchmarkFixtures fixtures;
+    private Deobfuscator deobfuscator;
+    private String[] lines;
+    private Path output;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    @Setup
+    public void setup() throws IOException {
+        fixtures = BenchmarkFixtures.get();
+        deobfuscator = fixtures.createDeobfuscator(Deobfuscator.DEFAULT_FRAME_CACHE_SIZE);
+        lines = fixtures.crashLines.toArray(new String[0]);
+        output = Files.createTempDirectory("minecraft-debug-bench-out");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        BenchmarkFixtures.deleteTree(output);
+    }
+
+    /**
+     * Starts every analysis without a class index, so it isn't only measured with the classes cached by the first
+     */
+    @State(Scope.Thread)
+    public static class ColdCache {
+        @Setup(Level.Invocation)
+        public void clear() throws IOException {
+            BenchmarkFixtures.deleteTree(BenchmarkFixtures.get().cacheDir);
+        }
+    }
+
+    @Benchmark
+    public void transformCrashLine(Blackhole bh) {
+        for (String line : lines) {
+            bh.consume(DebugAnalyzer.transformCrashLine(deobfuscator, line));
+        }
+    }
+
+    @Benchmark
+    public void analyze(ColdCache cache) throws IOException {
+        DebugAnalyzer analyzer = fixtures.createAnalyzer(fixtures.bundle, output);
+        analyzer.setThreads(threads);
+        analyzer.analyze();
+    }
+}
@@ -0,0 +1,182 @@
+package de.skyrising.minecraft.debug;
+
+import de.skyrising.minecraft.deobf.TinyMappings;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.stream.Stream;
+
+public class DebugAnalyzerTest {
+    private BenchmarkFixtures fixtures;
+    private final List<Path> tempDirs = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        fixtures = BenchmarkFixtures.get();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        for (Path dir : tempDirs) BenchmarkFixtures.deleteTree(dir);
+    }
+
+    private Path tempDir(String prefix) throws IOException {
+        Path dir = Files.createTempDirectory(prefix);
+        tempDirs.add(dir);
+        return dir;
+    }
+
+    private Path analyze(int threads, boolean hardLinks) throws IOException {
+        Path to = tempDir("minecraft-debug-out");
+        analyze(fixtures.bundle, to, threads, hardLinks);
+        return to;
+    }
+
+    private void analyze(Path from, Path to, int threads, boolean hardLinks) throws IOException {
+        DebugAnalyzer analyzer = fixtures.createAnalyzer(from, to);
+        analyzer.setThreads(threads);
+        analyzer.setHardLinks(hardLinks);
+        analyzer.analyze();
+    }
+
+    private void analyzeIncremental(Path from, Path to, String mappingsVersion) throws IOException {
+        DebugAnalyzer analyzer = fixtures.createAnalyzer(from, to);
+        analyzer.setMappingsProvider(version -> {
+            TinyMappings mappings = fixtures.loadMappings();
+            mappings.setVersion(mappingsVersion);
+            return mappings;
+        });
+        analyzer.setThreads(2);
+        analyzer.setIncremental(true);
+        analyzer.analyze();
+    }
+
+    private static Map<String, FileTime> modifiedTimes(Path root) throws IOException {
+        Map<String, FileTime> times = new TreeMap<>();
+        try (Stream<Path> files = Files.walk(root)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (Files.isRegularFile(file)) times.put(root.relativize(file).toString(), Files.getLastModifiedTime(file));
+            }
+        }
+        times.remove(BundleManifest.FILE_NAME);
+        return times;
+    }
+
+    private Path copyTree(Path from) throws IOException {
+        Path to = tempDir("minecraft-debug-bundle");
+        try (Stream<Path> files = Files.walk(from)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Path target = to.resolve(from.relativize(file).toString());
+                if (Files.isDirectory(file)) {
+                    Files.createDirectories(target);
+                } else {
+                    Files.copy(file, target, StandardCopyOption.COPY_ATTRIBUTES);
+                }
+            }
+        }
+        return to;
+    }
+
+    private Path screenshot() throws IOException {
+        try (Stream<Path> files = Files.list(fixtures.bundle.resolve("screenshots"))) {
+            return files.findFirst().get();
+        }
+    }
+
+    @Test
+    public void copiesUntransformedFiles() throws IOException {
+        Path to = analyze(1, false);
+        Path screenshot = screenshot();
+        Path copy = to.resolve(fixtures.bundle.relativize(screenshot).toString());
+        Assert.assertFalse(Files.isSameFile(screenshot, copy));
+        Assert.assertArrayEquals(Files.readAllBytes(screenshot), Files.readAllBytes(copy));
+        Assert.assertFalse(Files.readAllLines(to.resolve("logs/latest.log")).equals(Files.readAllLines(fixtures.bundle.resolve("logs/latest.log"))));
+    }
+
+    @Test
+    public void createsEmptyDirectories() throws IOException {
+        Path empty = fixtures.bundle.resolve("saves/world/region");
+        Files.createDirectories(empty);
+        try {
+            Assert.assertTrue(Files.isDirectory(analyze(2, false).resolve("saves/world/region")));
+        } finally {
+            Files.delete(empty);
+            Files.delete(empty.getParent());
+            Files.delete(empty.getParent().getParent());
+        }
+    }
+
+    @Test
+    public void incrementalSkipsCurrentOutputs() throws IOException {
+        Path from = copyTree(fixtures.bundle);
+        Path to = tempDir("minecraft-debug-out");
+        analyzeIncremental(from, to, "1");
+        Map<String, FileTime> first = modifiedTimes(to);
+        Assert.assertTrue(Files.exists(to.resolve(BundleManifest.FILE_NAME)));
+
+        analyzeIncremental(from, to, "1");
+        Assert.assertEquals(first, modifiedTimes(to));
+
+        // a new time alone doesn't transform again, new contents do
+        Path crashReport;
+        try (Stream<Path> files = Files.list(from.resolve("crash-reports"))) {
+            crashReport = files.findFirst().get();
+        }
+        Files.setLastModifiedTime(crashReport, FileTime.fromMillis(System.currentTimeMillis() + 60_000));
+        Path log = from.resolve("logs/latest.log");
+        Files.write(log, Arrays.asList("\tat a.b(SourceFile:1)"), StandardOpenOption.APPEND);
+        analyzeIncremental(from, to, "1");
+        Map<String, FileTime> second = modifiedTimes(to);
+        Assert.assertNotEquals(first.get("logs/latest.log"), second.get("logs/latest.log"));
+        second.remove("logs/latest.log");
+        first.remove("logs/latest.log");
+        Assert.assertEquals(first, second);
+        List<String> lines = Files.readAllLines(to.resolve("logs/latest.log"));
+        Assert.assertTrue(lines.get(lines.size() - 1).startsWith("\tat net.minecraft."));
+
+        // other mappings transform everything again but keep the copies
+        analyzeIncremental(from, to, "2");
+        Map<String, FileTime> third = modifiedTimes(to);
+        Assert.assertNotEquals(second.get(from.relativize(crashReport).toString()), third.get(from.relativize(crashReport).toString()));
+        Path screenshot = screenshot();
+        String screenshotPath = fixtures.bundle.relativize(screenshot).toString();
+        Assert.assertEquals(second.get(screenshotPath), third.get(screenshotPath));
+    }
+
+    @Test
+    public void copyOverHardLinkKeepsInput() throws IOException {
+        Path from = copyTree(fixtures.bundle);
+        Path to = tempDir("minecraft-debug-out");
+        Map<String, byte[]> inputs = new TreeMap<>();
+        try (Stream<Path> files = Files.walk(from)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (Files.isRegularFile(file)) inputs.put(from.relativize(file).toString(), Files.readAllBytes(file));
+            }
+        }
+        analyze(from, to, 2, true);
+        analyze(from, to, 2, false);
+        for (Map.Entry<String, byte[]> input : inputs.entrySet()) {
+            Path file = from.resolve(input.getKey());
+            Assert.assertArrayEquals(input.getKey(), input.getValue(), Files.readAllBytes(file));
+            Assert.assertFalse(input.getKey(), Files.isSameFile(file, to.resolve(input.getKey())));
+        }
+    }
+
+    @Test
+    public void hardLinksUntransformedFiles() throws IOException {
+        Path to = analyze(2, true);
+        Path screenshot = screenshot();
+        Assert.assertTrue(Files.isSameFile(screenshot, to.resolve(fixtures.bundle.relativize(screenshot).toString())));
+        Path log = fixtures.bundle.resolve("logs/latest.log");
+        Assert.assertFalse(Files.isSameFile(log, to.resolve("logs/latest.log")));
+    }
+}
@@ -0,0 +1,125 @@
+package de.skyrising.minecraft.debug;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class DebugServerTest {
+    private static BenchmarkFixtures fixtures;
+    private static DebugServer server;
+    private static CompletableFuture<Void> running;
+    private static DebugClient client;
+
+    @BeforeClass
+    public static void start() throws IOException {
+        fixtures = BenchmarkFixtures.get();
+        server = new DebugServer(0);
+        server.setThreads(2);
+        server.setMinecraftDir(fixtures.minecraftDir);
+        server.setCacheDir(fixtures.cacheDir);
+        server.getTransformers().register("failing", path -> path.endsWith(".fail"), d -> (in, out) -> {
+            out.write(ByteBuffer.allocate(100 * 1024));
+            throw new IOException("Transformer failed");
+        });
+        server.setMappingsProvider(version -> {
+            if (!version.equals(BenchmarkFixtures.GAME_VERSION)) throw new IOException("No mappings for " + version);
+            return fixtures.loadMappings();
+        });
+        running = CompletableFuture.runAsync(() -> {
+            try {
+                server.run();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        client = new DebugClient(server.getPort());
+    }
+
+    @AfterClass
+    public static void stop() throws IOException {
+        client.stop();
+        running.join();
+    }
+
+    @Test
+    public void transformText() throws IOException {
+        byte[] crash = (String.join("\n", fixtures.crashLines) + "\n").getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        new CrashLogTransformer(fixtures.createDeobfuscator(0)).transform(Channels.newChannel(new ByteArrayInputStream(crash)), Channels.newChannel(expected));
+        for (int i = 0; i < 2; i++) {
+            ByteArrayOutputStream actual = new ByteArrayOutputStream();
+            client.transformText(BenchmarkFixtures.GAME_VERSION, null, new ByteArrayInputStream(crash), actual);
+            Assert.assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+        }
+    }
+
+    @Test
+    public void transformBundle() throws IOException {
+        Path expected = Files.createTempDirectory("minecraft-debug-expected");
+        fixtures.createAnalyzer(fixtures.bundle, expected).analyze();
+
+        Path zip = Files.createTempFile("bundle", ".zip");
+        Path result = Files.createTempFile("result", ".zip");
+        Files.delete(zip);
+        Path zipRoot = Main.getPath(zip);
+        for (Path file : list(fixtures.bundle)) {
+            Path target = zipRoot.resolve(fixtures.bundle.relativize(file).toString());
+            if (target.getParent() != null) Files.createDirectories(target.getParent());
+            Files.copy(file, target);
+        }
+        zipRoot.getFileSystem().close();
+
+        client.transformBundle(zip, result);
+        Path resultRoot = Main.getPath(result);
+        try {
+            List<Path> files = list(expected);
+            Assert.assertEquals(files.size(), list(resultRoot).size());
+            for (Path file : files) {
+                Path actual = resultRoot.resolve(expected.relativize(file).toString());
+                Assert.assertArrayEquals(file.toString(), Files.readAllBytes(file), Files.readAllBytes(actual));
+            }
+        } finally {
+            resultRoot.getFileSystem().close();
+            Files.delete(zip);
+            Files.delete(result);
+            BenchmarkFixtures.deleteTree(expected);
+        }
+    }
+
+    @Test
+    public void reportsFailureAfterOk() throws IOException {
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        try {
+            client.transformText(BenchmarkFixtures.GAME_VERSION, "crash.fail", new ByteArrayInputStream(new byte[0]), actual);
+            Assert.fail("Truncated result was accepted");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("Transformer failed"));
+        }
+        Assert.assertEquals(100 * 1024, actual.size());
+    }
+
+    @Test(expected = IOException.class)
+    public void unknownVersion() throws IOException {
+        client.transformText("0.0.0", null, new ByteArrayInputStream(new byte[0]), new ByteArrayOutputStream());
+    }
+
+    private static List<Path> list(Path root) throws IOException {
+        try (Stream<Path> walk = Files.walk(root)) {
+            return walk.filter(p -> !Files.isDirectory(p)).collect(Collectors.toList());
+        }
+    }
+}
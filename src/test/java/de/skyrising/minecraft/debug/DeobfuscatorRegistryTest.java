@@ -0,0 +1,95 @@
+package de.skyrising.minecraft.debug;
+
+import de.skyrising.minecraft.deobf.Deobfuscator;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+public class DeobfuscatorRegistryTest {
+    private BenchmarkFixtures fixtures;
+    private final AtomicInteger loads = new AtomicInteger();
+    // estimated size of a version without a game jar
+    private long versionSize;
+
+    @Before
+    public void setUp() throws IOException {
+        fixtures = BenchmarkFixtures.get();
+        long mappingsSize = fixtures.loadMappings().estimateSize();
+        Assert.assertTrue(mappingsSize > 0);
+        versionSize = new Deobfuscator(fixtures.loadMappings(), name -> null, null).estimateSize();
+        // the caches are weighed too
+        Assert.assertTrue(versionSize > mappingsSize);
+    }
+
+    private DeobfuscatorRegistry create(long memoryBudget) {
+        return new DeobfuscatorRegistry(fixtures.minecraftDir, fixtures.cacheDir, version -> {
+            if (version.startsWith("missing")) throw new IOException("No mappings for " + version);
+            loads.incrementAndGet();
+            return fixtures.loadMappings();
+        }, memoryBudget);
+    }
+
+    @Test
+    public void keepsVersionsWithinBudget() throws IOException {
+        DeobfuscatorRegistry registry = create(4 * versionSize);
+        Deobfuscator a = registry.get(DebugAnalyzer.GameClassPath.ofVersion("a"));
+        Deobfuscator b = registry.get(DebugAnalyzer.GameClassPath.ofVersion("b"));
+        Assert.assertNotSame(a, b);
+        Assert.assertSame(a, registry.get(DebugAnalyzer.GameClassPath.ofVersion("a")));
+        Assert.assertSame(b, registry.get(DebugAnalyzer.GameClassPath.ofVersion("b")));
+        Assert.assertEquals(2, loads.get());
+        Assert.assertEquals(2, registry.size());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() throws IOException {
+        DeobfuscatorRegistry registry = create(versionSize * 5 / 2);
+        registry.get(DebugAnalyzer.GameClassPath.ofVersion("a"));
+        Deobfuscator b = registry.get(DebugAnalyzer.GameClassPath.ofVersion("b"));
+        Deobfuscator a = registry.get(DebugAnalyzer.GameClassPath.ofVersion("a"));
+        registry.get(DebugAnalyzer.GameClassPath.ofVersion("c"));
+        Assert.assertSame(a, registry.getIfLoaded("a"));
+        Assert.assertNull(registry.getIfLoaded("b"));
+        Assert.assertNotSame(b, registry.get(DebugAnalyzer.GameClassPath.ofVersion("b")));
+        Assert.assertEquals(4, loads.get());
+    }
+
+    @Test
+    public void weighsClassPath() throws IOException {
+        Deobfuscator withJar = create(4 * versionSize).get(DebugAnalyzer.GameClassPath.ofVersion(BenchmarkFixtures.GAME_VERSION));
+        Assert.assertTrue(withJar.estimateSize() > versionSize);
+    }
+
+    @Test
+    public void savesIndexesOnRequest() throws IOException {
+        Path cacheDir = Files.createTempDirectory("minecraft-debug-cache");
+        try {
+            DeobfuscatorRegistry registry = new DeobfuscatorRegistry(fixtures.minecraftDir, cacheDir, version -> fixtures.loadMappings(), 4 * versionSize);
+            Deobfuscator deobfuscator = registry.get(DebugAnalyzer.GameClassPath.ofVersion(BenchmarkFixtures.GAME_VERSION));
+            deobfuscator.deobfuscate(new StackTraceElement("a", "a", "SourceFile", 5));
+            Assert.assertFalse(hasIndex(cacheDir));
+            registry.saveIndexes();
+            Assert.assertTrue(hasIndex(cacheDir));
+        } finally {
+            BenchmarkFixtures.deleteTree(cacheDir);
+        }
+    }
+
+    private static boolean hasIndex(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) return false;
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.anyMatch(file -> file.getFileName().toString().endsWith(".idx"));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void propagatesLoadFailures() throws IOException {
+        create(4 * versionSize).get(DebugAnalyzer.GameClassPath.ofVersion("missing"));
+    }
+}
@@ -0,0 +1,34 @@
+package de.skyrising.minecraft.debug;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StackTraceUtilBenchmark {
+    private String[] lines;
+    private final StackTraceUtil.Frame frame = new StackTraceUtil.Frame();
+
+    @Setup
+    public void setup() throws IOException {
+        lines = BenchmarkFixtures.get().crashLines.toArray(new String[0]);
+    }
+
+    @Benchmark
+    public void parse(Blackhole bh) {
+        for (String line : lines) {
+            bh.consume(StackTraceUtil.parse(line));
+        }
+    }
+
+    @Benchmark
+    public void parseReusingFrame(Blackhole bh) {
+        for (String line : lines) {
+            bh.consume(StackTraceUtil.parse(line, frame));
+        }
+    }
+}
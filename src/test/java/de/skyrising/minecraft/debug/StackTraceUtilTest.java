@@ -0,0 +1,83 @@
+package de.skyrising.minecraft.debug;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class StackTraceUtilTest {
+    // the pattern the scanner replaced, used as reference
+    private static final Pattern STE_PATTERN = Pattern.compile("^\tat\\s+(?<class>(?:[\\w$\\/]+\\.)*[\\w$\\/]+)\\.(?<method>\\w+)\\((?<file>.+?)(?::(?<line>\\d+))?\\)$");
+
+    private static final String[] LINES = {
+        "\tat net.minecraft.server.MinecraftServer.run(MinecraftServer.java:612)",
+        "\tat net.minecraft.server.MinecraftServer.a(SourceFile:621)",
+        "\tat java.lang.Thread.run(Thread.java:748)",
+        "\tat java.base/java.lang.Thread.run(Thread.java:834)",
+        "\tat sun.reflect.NativeMethodAccessorImpl.invoke0(Native Method)",
+        "\tat cyi.a(Unknown Source)",
+        "\tat cyi$a.b(SourceFile:12)",
+        "\tat cyi$$Lambda$123/456789.run(Unknown Source)",
+        "\tat  a.b(c:1)",
+        "\tat\ta.b(c:1)",
+        "\tat a.b(c:1:2)",
+        "\tat a.b(c:)",
+        "\tat a.b(:1)",
+        "\tat a.b(c:1) d)",
+        "\tat a.b(c:1)\n",
+        "\tat a.b()",
+        "\tat a.b(c",
+        "\tat a.b$c(d:1)",
+        "\tat a..b(c:1)",
+        "\tat .a.b(c:1)",
+        "\tat a.(c:1)",
+        "\tat a(c:1)",
+        "\tata.b(c:1)",
+        "\tat a.b(c:99999999999)",
+        "at a.b(c:1)",
+        "\tat",
+        "",
+        "\t... 12 more",
+        "Caused by: java.lang.NullPointerException",
+    };
+
+    @Test
+    public void matchesRegex() {
+        for (String line : LINES) {
+            Assert.assertEquals(line, parseRegex(line), parse(line));
+        }
+    }
+
+    @Test
+    public void reusesFrame() {
+        StackTraceUtil.Frame frame = new StackTraceUtil.Frame();
+        Assert.assertTrue(StackTraceUtil.parse("\tat a.b(c:1)", frame));
+        Assert.assertTrue(StackTraceUtil.parse("\tat d.e.f(Native Method)", frame));
+        Assert.assertEquals("d.e", frame.getClassName());
+        Assert.assertEquals("f", frame.getMethodName());
+        Assert.assertNull(frame.getFileName());
+        Assert.assertEquals(-1, frame.getLineNumber());
+    }
+
+    private static String parse(String line) {
+        try {
+            return String.valueOf(StackTraceUtil.parse(line));
+        } catch (NumberFormatException e) {
+            return "error";
+        }
+    }
+
+    private static String parseRegex(String line) {
+        if (!line.startsWith("\tat")) return "null";
+        Matcher match = STE_PATTERN.matcher(line);
+        if (!match.find()) return "null";
+        String lineNumber = match.group("line");
+        if (lineNumber == null) return new StackTraceElement(match.group("class"), match.group("method"), null, -1).toString();
+        try {
+            return new StackTraceElement(match.group("class"), match.group("method"), match.group("file"), Integer.parseInt(lineNumber)).toString();
+        } catch (NumberFormatException e) {
+            return "null";
+        }
+    }
+}
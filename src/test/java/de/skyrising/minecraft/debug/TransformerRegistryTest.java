@@ -0,0 +1,85 @@
+package de.skyrising.minecraft.debug;
+
+import de.skyrising.minecraft.deobf.Deobfuscator;
+import de.skyrising.minecraft.deobf.TestFixtures;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+public class TransformerRegistryTest {
+    private final TransformerRegistry registry = TransformerRegistry.createDefault();
+
+    private static byte[] transform(FileTransformer transformer, byte[] input) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        transformer.transform(Channels.newChannel(new ByteArrayInputStream(input)), Channels.newChannel(out));
+        return out.toByteArray();
+    }
+
+    @Test
+    public void selectsTransformerByPath() throws IOException {
+        Deobfuscator deobfuscator = TestFixtures.createDeobfuscator();
+        Assert.assertTrue(registry.get("logs/latest.log", deobfuscator) instanceof CrashLogTransformer);
+        Assert.assertTrue(registry.get("logs/2019-07-20-1.log.gz", deobfuscator) instanceof GzipTransformer);
+        Assert.assertTrue(registry.get("crash-reports/crash-2019-07-20_12.00.00-server.txt", deobfuscator) instanceof CrashLogTransformer);
+        Assert.assertTrue(registry.get("hs_err_pid1234.log", deobfuscator) instanceof HsErrTransformer);
+        Assert.assertNull(registry.get("notes.txt", deobfuscator));
+        Assert.assertNull(registry.get("screenshots/2019-07-20_12.00.00.png", deobfuscator));
+    }
+
+    @Test
+    public void replacesRegistrationOfSameType() throws IOException {
+        Deobfuscator deobfuscator = TestFixtures.createDeobfuscator();
+        Assert.assertEquals("log", registry.getType("logs/latest.log"));
+        Assert.assertEquals("hs_err", registry.getType("hs_err_pid1234.log"));
+        Assert.assertNull(registry.getType("notes.txt"));
+        registry.register("log", path -> path.endsWith(".log"), HsErrTransformer::new);
+        Assert.assertTrue(registry.get("logs/latest.log", deobfuscator) instanceof HsErrTransformer);
+        // still checked after hs_err
+        Assert.assertEquals("hs_err", registry.getType("hs_err_pid1234.log"));
+    }
+
+    @Test
+    public void transformsGzipLogs() throws IOException {
+        Deobfuscator deobfuscator = TestFixtures.createDeobfuscator();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gz = new GZIPOutputStream(compressed)) {
+            gz.write("[12:00:00] [Server thread/ERROR]: Crash\n\tat a.run(SourceFile:3)\n".getBytes(StandardCharsets.UTF_8));
+        }
+        byte[] output = transform(registry.get("logs/latest.log.gz", deobfuscator), compressed.toByteArray());
+        ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+        try (GZIPInputStream gz = new GZIPInputStream(new ByteArrayInputStream(output))) {
+            byte[] buf = new byte[1024];
+            int n;
+            while ((n = gz.read(buf)) > 0) decompressed.write(buf, 0, n);
+        }
+        Assert.assertEquals("[12:00:00] [Server thread/ERROR]: Crash\n\tat net.minecraft.server.MinecraftServer.run(MinecraftServer.java:3)\n",
+                new String(decompressed.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void transformsHsErrFrames() throws IOException {
+        Deobfuscator deobfuscator = TestFixtures.createDeobfuscator();
+        String input = "Java frames: (J=compiled Java code, j=interpreted, Vv=VM code)\n" +
+                "j  a.a(Lb;)V+12\n" +
+                "J 5123 c2 a.a(Lb;)V (156 bytes) @ 0x00007f0000000000 [0x00007f0000000100+0x40]\n" +
+                "j  java.lang.Thread.run()V+11\n" +
+                "j  a.a(La)V+1\n" +
+                "j  a.a(La)Lb;+1\n";
+        String expected = "Java frames: (J=compiled Java code, j=interpreted, Vv=VM code)\n" +
+                "j  net.minecraft.server.MinecraftServer.tickPlayer(Lnet/minecraft/entity/Player;)V+12\n" +
+                "J 5123 c2 net.minecraft.server.MinecraftServer.tickPlayer(Lnet/minecraft/entity/Player;)V (156 bytes) @ 0x00007f0000000000 [0x00007f0000000100+0x40]\n" +
+                "j  java.lang.Thread.run()V+11\n" +
+                // malformed parameters are left as they are
+                "j  a.a(La)V+1\n" +
+                "j  a.a(La)Lb;+1\n";
+        byte[] output = transform(registry.get("hs_err_pid1234.log", deobfuscator), input.getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals(expected, new String(output, StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,90 @@
+package de.skyrising.minecraft.deobf;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class ClassIndexTest {
+    @Test
+    public void hashChangesWithJarAttributesAndClassPath() throws IOException {
+        Path jar = Files.createTempFile("game", ".jar");
+        try {
+            List<String> classPath = Arrays.asList("libraries/a.jar", "versions/1.14.4/1.14.4.jar");
+            Files.write(jar, new byte[] {1, 2, 3});
+            Files.setLastModifiedTime(jar, FileTime.fromMillis(1_000_000));
+            String hash = ClassIndex.hash(jar, classPath);
+            Assert.assertEquals(16, hash.length());
+            Assert.assertEquals(hash, ClassIndex.hash(jar, classPath));
+            Assert.assertNotEquals(hash, ClassIndex.hash(jar, classPath.subList(1, 2)));
+
+            Files.setLastModifiedTime(jar, FileTime.fromMillis(2_000_000));
+            String touched = ClassIndex.hash(jar, classPath);
+            Assert.assertNotEquals(hash, touched);
+
+            Files.write(jar, new byte[] {1, 2, 3, 4});
+            Files.setLastModifiedTime(jar, FileTime.fromMillis(2_000_000));
+            Assert.assertNotEquals(touched, ClassIndex.hash(jar, classPath));
+        } finally {
+            Files.delete(jar);
+        }
+    }
+
+    @Test
+    public void doesNotSaveMissingClasses() throws IOException {
+        Path dir = Files.createTempDirectory("class-index");
+        Path file = dir.resolve("test.idx");
+        try {
+            ClassIndex index = ClassIndex.open(file);
+            index.put("a", new ClassInfo("java/lang/Object", new String[] {"b"}, new Object[] {null, "()V"}));
+            index.put("c", ClassInfo.MISSING);
+            index.save();
+            ClassIndex reopened = ClassIndex.open(file);
+            Assert.assertEquals(1, reopened.size());
+            ClassInfo info = reopened.get("a");
+            Assert.assertEquals("java/lang/Object", info.superName);
+            Assert.assertArrayEquals(new String[] {"b"}, info.interfaces);
+            Assert.assertNull(reopened.get("c"));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void savesNewGenerations() throws IOException {
+        Path dir = Files.createTempDirectory("class-index");
+        Path file = dir.resolve("test.idx");
+        try {
+            ClassIndex index = ClassIndex.open(file);
+            index.put("a", new ClassInfo(null, ClassInfo.NO_INTERFACES, new Object[0]));
+            index.save();
+            ClassIndex reopened = ClassIndex.open(file);
+            reopened.put("b", new ClassInfo("a", ClassInfo.NO_INTERFACES, new Object[0]));
+            reopened.save();
+            Assert.assertTrue(Files.exists(ClassIndex.generationFile(file, 1)));
+            index.put("c", new ClassInfo("b", ClassInfo.NO_INTERFACES, new Object[0]));
+            index.save();
+            Assert.assertTrue(Files.exists(ClassIndex.generationFile(file, 2)));
+            Assert.assertFalse(Files.exists(ClassIndex.generationFile(file, 0)));
+            Assert.assertFalse(Files.exists(ClassIndex.generationFile(file, 1)));
+            ClassIndex latest = ClassIndex.open(file);
+            Assert.assertEquals(2, latest.size());
+            Assert.assertEquals("b", latest.get("c").superName);
+        } finally {
+            delete(dir);
+        }
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) Files.delete(file);
+        }
+        Files.delete(dir);
+    }
+}
@@ -0,0 +1,77 @@
+package de.skyrising.minecraft.deobf;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+public class CompiledMappingsTest {
+    @Test
+    public void matchesTinyMappings() throws IOException {
+        TinyMappings tiny = TestFixtures.loadMappings();
+        Path file = Files.createTempDirectory("compiled-mappings").resolve("test.mappings");
+        CompiledMappings.write(tiny, file);
+        CompiledMappings compiled = CompiledMappings.open(file);
+        for (Mappings m : Arrays.asList(tiny, compiled)) {
+            Assert.assertEquals("net/minecraft/server/MinecraftServer", m.deobfuscateClass("a"));
+            Assert.assertEquals("net/minecraft/server/MinecraftServer$Inner", m.deobfuscateClass("a$b"));
+            Assert.assertNull(m.deobfuscateClass("d"));
+            Assert.assertEquals("b", m.obfuscateClass("net/minecraft/entity/Player"));
+            Assert.assertEquals("tickPlayer", m.deobfuscateMethod("a", "a", "(Lb;)V"));
+            Assert.assertEquals("tickEntity", m.deobfuscateMethod("a", "a", "(I)V"));
+            Assert.assertNull(m.deobfuscateMethod("a", "a", "()V"));
+            Assert.assertNull(m.deobfuscateMethod("a", "a", null));
+            Assert.assertEquals("b", m.obfuscateMethod("net/minecraft/entity/Player", "getServer", "()Lnet/minecraft/server/MinecraftServer;"));
+            Assert.assertEquals(Arrays.asList("(I)V", "(Lb;)V"), sorted(m.getObfuscatedMethods("a", "a")));
+            Assert.assertEquals(Collections.singletonList("(Lnet/minecraft/entity/Player;)V"),
+                    sorted(m.getDeobfuscatedMethods("net/minecraft/server/MinecraftServer", "tickPlayer")));
+            Assert.assertEquals("player", m.deobfuscateField("a", "c"));
+            Assert.assertEquals("c", m.obfuscateField("net/minecraft/server/MinecraftServer", "player"));
+            Assert.assertNull(m.deobfuscateField("b", "c"));
+        }
+    }
+
+    @Test
+    public void findsNonAsciiNames() throws IOException {
+        // 1 to 4 UTF-8 bytes, \uff21 sorts after the surrogate pair in UTF-16 but before it in UTF-8
+        String[] names = {"z", "\u00e9", "\u4e2d", "\uff21", "\ud83d\ude00", "a\u00e9", "a\ud83d\ude00b"};
+        StringBuilder tiny = new StringBuilder("v1\tofficial\tnamed\n");
+        for (int i = 0; i < names.length; i++) {
+            tiny.append("CLASS\t").append(names[i]).append("\tnet/minecraft/Class").append(i).append('\n');
+            tiny.append("FIELD\t").append(names[i]).append("\tI\t").append(names[i]).append("\tfield").append(i).append('\n');
+        }
+        Path dir = Files.createTempDirectory("compiled-mappings");
+        Path file = dir.resolve("test.mappings");
+        try {
+            CompiledMappings.write(TinyMappings.load(Channels.newChannel(new ByteArrayInputStream(tiny.toString().getBytes(StandardCharsets.UTF_8)))), file);
+            CompiledMappings compiled = CompiledMappings.open(file);
+            for (int i = 0; i < names.length; i++) {
+                Assert.assertEquals("net/minecraft/Class" + i, compiled.deobfuscateClass(names[i]));
+                Assert.assertEquals(names[i], compiled.obfuscateClass("net/minecraft/Class" + i));
+                Assert.assertEquals("field" + i, compiled.deobfuscateField(names[i], names[i]));
+            }
+            Assert.assertNull(compiled.deobfuscateClass("\u00e8"));
+            Assert.assertNull(compiled.deobfuscateClass("\u00e9a"));
+            Assert.assertNull(compiled.deobfuscateClass("a\ud83d\ude00"));
+            Assert.assertNull(compiled.deobfuscateClass("\ud83d\ude01"));
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    private static List<String> sorted(Collection<String> values) {
+        String[] array = values.toArray(new String[0]);
+        Arrays.sort(array);
+        return Arrays.asList(array);
+    }
+}
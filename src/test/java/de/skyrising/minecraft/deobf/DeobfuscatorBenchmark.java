@@ -0,0 +1,41 @@
+package de.skyrising.minecraft.deobf;
+
+import de.skyrising.minecraft.debug.BenchmarkFixtures;
+import de.skyrising.minecraft.debug.StackTraceUtil;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeobfuscatorBenchmark {
+    private Deobfuscator deobfuscator;
+    private StackTraceElement[] frames;
+
+    @Param({"0", "4096"})
+    public int frameCacheSize;
+
+    @Setup
+    public void setup() throws IOException {
+        BenchmarkFixtures fixtures = BenchmarkFixtures.get();
+        deobfuscator = fixtures.createDeobfuscator(frameCacheSize);
+        List<StackTraceElement> frames = new ArrayList<>();
+        for (String line : fixtures.crashLines) {
+            StackTraceElement frame = StackTraceUtil.parse(line);
+            if (frame != null) frames.add(frame);
+        }
+        this.frames = frames.toArray(new StackTraceElement[0]);
+    }
+
+    @Benchmark
+    public void deobfuscate(Blackhole bh) {
+        for (StackTraceElement frame : frames) {
+            bh.consume(deobfuscator.deobfuscate(frame));
+        }
+    }
+}
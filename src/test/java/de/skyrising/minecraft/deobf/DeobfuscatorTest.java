@@ -0,0 +1,64 @@
+package de.skyrising.minecraft.deobf;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DeobfuscatorTest {
+    @Test
+    public void cachesFrames() throws IOException {
+        Deobfuscator deobfuscator = TestFixtures.createDeobfuscator(16);
+        StackTraceElement frame = new StackTraceElement("a$b", "c", "SourceFile", 12);
+        StackTraceElement expected = new StackTraceElement("net.minecraft.server.MinecraftServer$Inner", "c", "MinecraftServer.java", 12);
+        Assert.assertEquals(expected, deobfuscator.deobfuscate(frame));
+        Assert.assertSame(deobfuscator.deobfuscate(frame), deobfuscator.deobfuscate(new StackTraceElement("a$b", "c", "SourceFile", 12)));
+        Assert.assertEquals(new StackTraceElement("net.minecraft.server.MinecraftServer$Inner", "c", "MinecraftServer.java", 13),
+                deobfuscator.deobfuscate(new StackTraceElement("a$b", "c", "SourceFile", 13)));
+        Assert.assertEquals(2, deobfuscator.getFrameCacheStats().missCount());
+        Assert.assertEquals(2, deobfuscator.getFrameCacheStats().hitCount());
+    }
+
+    @Test
+    public void returnsUnmappedFramesUnchanged() throws IOException {
+        Deobfuscator deobfuscator = TestFixtures.createDeobfuscator(16);
+        StackTraceElement first = new StackTraceElement("java.lang.Thread", "run", "Thread.java", 748);
+        StackTraceElement second = new StackTraceElement("java.lang.Thread", "run", null, 748);
+        Assert.assertSame(first, deobfuscator.deobfuscate(first));
+        Assert.assertSame(second, deobfuscator.deobfuscate(second));
+        Assert.assertEquals(1, deobfuscator.getFrameCacheStats().hitCount());
+    }
+
+    @Test
+    public void resolvesInheritedMethodsOnce() throws IOException {
+        TinyMappings tiny = TestFixtures.loadMappings();
+        AtomicInteger lookups = new AtomicInteger();
+        Mappings mappings = (Mappings) Proxy.newProxyInstance(Mappings.class.getClassLoader(), new Class[] {Mappings.class}, (proxy, method, args) -> {
+            if (method.getName().equals("deobfuscateMethod")) lookups.incrementAndGet();
+            return method.invoke(tiny, args);
+        });
+        ClassWriter cw = new ClassWriter(0);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "c", null, "a", null);
+        cw.visitEnd();
+        byte[] subclass = cw.toByteArray();
+        ClassLoader loader = new ClassLoader(null) {
+            @Override
+            public InputStream getResourceAsStream(String name) {
+                return name.equals("c.class") ? new ByteArrayInputStream(subclass) : null;
+            }
+        };
+        Deobfuscator deobfuscator = new Deobfuscator(mappings, loader);
+        Assert.assertEquals("tick", deobfuscator.deobfuscateMethod("c", "d", "()V"));
+        Assert.assertNull(deobfuscator.deobfuscateMethod("c", "e", "()V"));
+        int resolved = lookups.get();
+        Assert.assertEquals("tick", deobfuscator.deobfuscateMethod("c", "d", "()V"));
+        Assert.assertNull(deobfuscator.deobfuscateMethod("c", "e", "()V"));
+        Assert.assertEquals(resolved, lookups.get());
+    }
+}
@@ -0,0 +1,171 @@
+package de.skyrising.minecraft.deobf;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.stream.Stream;
+import java.util.zip.ZipOutputStream;
+
+public class JarClassPathTest {
+    private Path dir;
+    private JarClassPath classPath;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("jar-class-path");
+        Path first = dir.resolve("first.jar");
+        Path second = dir.resolve("second.jar");
+        writeJar(first, "a.class", "first a", "net/minecraft/b.class", "first b", "assets/c.class.txt", "no class");
+        writeJar(second, "a.class", "second a", "io/netty/d.class", "second d", "empty.class", "");
+        Path broken = dir.resolve("broken.jar");
+        Files.write(broken, "not a zip file".getBytes(StandardCharsets.UTF_8));
+        classPath = new JarClassPath(Arrays.asList(first, dir.resolve("missing.jar"), broken, second));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        classPath.close();
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) Files.delete(file);
+        }
+        Files.delete(dir);
+    }
+
+    private static void writeJar(Path jar, String... entries) throws IOException {
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+            for (int i = 0; i < entries.length; i += 2) {
+                out.putNextEntry(new ZipEntry(entries[i]));
+                out.write(entries[i + 1].getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+    }
+
+    private static byte[] classFile(String name, String superName, String... interfaces) {
+        ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, name, null, superName, interfaces);
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private static void writeClasses(Path jar, byte[]... classes) throws IOException {
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+            for (byte[] bytes : classes) {
+                out.putNextEntry(new ZipEntry(new ClassReader(bytes).getClassName() + ".class"));
+                out.write(bytes);
+                out.closeEntry();
+            }
+        }
+    }
+
+    private String read(String internalName) throws IOException {
+        byte[] bytes = classPath.getClassBytes(internalName);
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void firstJarWins() throws IOException {
+        Assert.assertEquals("first a", read("a"));
+        Assert.assertEquals("first b", read("net/minecraft/b"));
+        Assert.assertEquals("second d", read("io/netty/d"));
+        Assert.assertEquals("", read("empty"));
+    }
+
+    @Test
+    public void indexesOnlyClasses() throws IOException {
+        Assert.assertNull(read("assets/c"));
+        Assert.assertNull(read("java/lang/Object"));
+        Assert.assertEquals(4, classPath.size());
+    }
+
+    @Test
+    public void prunesToSupertypesOfRoot() throws IOException {
+        Path base = dir.resolve("base.jar");
+        Path itf = dir.resolve("itf.jar");
+        Path unrelated = dir.resolve("unrelated.jar");
+        Path root = dir.resolve("root.jar");
+        Path deep = dir.resolve("deep.jar");
+        writeClasses(base, classFile("lib/Base", "deep/Deeper"));
+        writeClasses(itf, classFile("lib/Itf", "java/lang/Object"));
+        writeClasses(unrelated, classFile("lib/Unrelated", "lib/Base"));
+        writeClasses(root, classFile("a", "lib/Base", "lib/Itf"), classFile("b", "a", "java/lang/Runnable"));
+        writeClasses(deep, classFile("deep/Deeper", "java/lang/Object"));
+        List<Path> jars = Arrays.asList(base, itf, unrelated, root, deep);
+        Path prunedFile = dir.resolve("pruned.classpath");
+
+        try (JarClassPath full = new JarClassPath(jars, root, prunedFile)) {
+            Assert.assertEquals(6, full.size());
+            full.pruning().join();
+        }
+        List<String> pruned = Files.readAllLines(prunedFile);
+        Assert.assertEquals(Arrays.asList(base.toString(), itf.toString(), root.toString(), deep.toString()), pruned);
+
+        try (JarClassPath cached = new JarClassPath(jars, root, prunedFile)) {
+            Assert.assertEquals(5, cached.size());
+            Assert.assertNull(cached.getClassBytes("lib/Unrelated"));
+            Assert.assertNotNull(cached.getClassBytes("deep/Deeper"));
+        }
+
+        // a cached class path listing other jars is determined again
+        try (JarClassPath changed = new JarClassPath(Arrays.asList(base, itf, root), root, prunedFile)) {
+            Assert.assertEquals(4, changed.size());
+            changed.pruning().join();
+        }
+        Assert.assertEquals(Arrays.asList(base.toString(), itf.toString(), root.toString()), Files.readAllLines(prunedFile));
+    }
+
+    @Test
+    public void doesNotPruneIncompleteClassPath() throws IOException {
+        Path base = dir.resolve("base.jar");
+        Path root = dir.resolve("root.jar");
+        writeClasses(base, classFile("lib/Base", "java/lang/Object"));
+        writeClasses(root, classFile("a", "lib/Base"));
+        Path prunedFile = dir.resolve("pruned.classpath");
+        try (JarClassPath incomplete = new JarClassPath(Arrays.asList(base, dir.resolve("missing.jar"), root), root, prunedFile)) {
+            Assert.assertEquals(2, incomplete.size());
+            incomplete.pruning().join();
+        }
+        Assert.assertFalse(Files.exists(prunedFile));
+    }
+
+    @Test
+    public void readsSupertypesFromHeader() throws IOException {
+        ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "a/B", null, "a/C", new String[] {"a/D", "java/lang/Runnable"});
+        // constants of every width before the header
+        writer.newConst(1L);
+        writer.newConst(2.0);
+        writer.newConst(3);
+        writer.newConst("\u00e9");
+        writer.newHandle(Opcodes.H_INVOKESTATIC, "a/C", "m", "()V", false);
+        writer.newMethodType("()V");
+        writer.visitMethod(Opcodes.ACC_PUBLIC, "m", "()V", null, null).visitEnd();
+        writer.visitEnd();
+        byte[] bytes = writer.toByteArray();
+        Assert.assertEquals(Arrays.asList("a/C", "a/D", "java/lang/Runnable"), JarClassPath.readSupertypes(new ByteArrayInputStream(bytes)));
+        // fields, the method and attributes take the last 14 bytes, they aren't needed
+        Assert.assertEquals(Arrays.asList("a/C", "a/D", "java/lang/Runnable"),
+                JarClassPath.readSupertypes(new ByteArrayInputStream(bytes, 0, bytes.length - 12)));
+        Assert.assertEquals(Collections.emptyList(), JarClassPath.readSupertypes(new ByteArrayInputStream(classFile("java/lang/Object", null))));
+    }
+
+    @Test(expected = IOException.class)
+    public void closed() throws IOException {
+        classPath.close();
+        classPath.getClassBytes("a");
+    }
+}
@@ -0,0 +1,41 @@
+package de.skyrising.minecraft.deobf;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Small set of mappings shared by the unit tests
+ */
+public final class TestFixtures {
+    public static final String TINY = "v1\tofficial\tintermediary\tnamed\n" +
+            "CLASS\ta\tnet/minecraft/class_1\tnet/minecraft/server/MinecraftServer\n" +
+            "CLASS\ta$b\tnet/minecraft/class_1$class_2\tnet/minecraft/server/MinecraftServer$Inner\n" +
+            "CLASS\tb\tnet/minecraft/class_3\tnet/minecraft/entity/Player\n" +
+            "CLASS\tc\tnet/minecraft/class_4\tnet/minecraft/server/DedicatedServer\n" +
+            "METHOD\ta\t(Lb;)V\ta\tmethod_1\ttickPlayer\n" +
+            "METHOD\ta\t(I)V\ta\tmethod_2\ttickEntity\n" +
+            "METHOD\ta\t()V\td\tmethod_3\ttick\n" +
+            "METHOD\tb\t()La;\tb\tmethod_4\tgetServer\n" +
+            "FIELD\ta\tLb;\tc\tfield_1\tplayer\n";
+
+    private TestFixtures() {}
+
+    public static TinyMappings loadMappings() throws IOException {
+        return TinyMappings.load(Channels.newChannel(new ByteArrayInputStream(TINY.getBytes(StandardCharsets.UTF_8))));
+    }
+
+    /**
+     * @return a deobfuscator for {@link #TINY} without any game classes
+     */
+    public static Deobfuscator createDeobfuscator() throws IOException {
+        return createDeobfuscator(Deobfuscator.DEFAULT_FRAME_CACHE_SIZE);
+    }
+
+    public static Deobfuscator createDeobfuscator(int frameCacheSize) throws IOException {
+        return new Deobfuscator(loadMappings(), new URLClassLoader(new URL[0], null), null, frameCacheSize);
+    }
+}
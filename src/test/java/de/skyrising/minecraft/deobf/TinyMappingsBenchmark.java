@@ -0,0 +1,29 @@
+package de.skyrising.minecraft.deobf;
+
+import de.skyrising.minecraft.debug.BenchmarkFixtures;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TinyMappingsBenchmark {
+    private byte[] mappings;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    @Setup
+    public void setup() throws IOException {
+        mappings = BenchmarkFixtures.get().getMappingsBytes();
+    }
+
+    @Benchmark
+    public TinyMappings load() throws IOException {
+        return TinyMappings.load(Channels.newChannel(new ByteArrayInputStream(mappings)), threads);
+    }
+}
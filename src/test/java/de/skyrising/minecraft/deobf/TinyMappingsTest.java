@@ -0,0 +1,61 @@
+package de.skyrising.minecraft.deobf;
+
+import de.skyrising.minecraft.debug.BenchmarkFixtures;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+
+public class TinyMappingsTest {
+    @Test
+    public void parallelLoadMatchesSequential() throws IOException {
+        byte[] bytes = BenchmarkFixtures.get().getMappingsBytes();
+        TinyMappings sequential = TinyMappings.load(Channels.newChannel(new ByteArrayInputStream(bytes)));
+        TinyMappings parallel = TinyMappings.load(Channels.newChannel(new ByteArrayInputStream(bytes)), 4);
+        Assert.assertEquals(sequential.getClassCount(), parallel.getClassCount());
+        Assert.assertEquals(sequential.getMethodCount(), parallel.getMethodCount());
+        Assert.assertEquals(sequential.getFieldCount(), parallel.getFieldCount());
+        for (int ns = 0; ns < sequential.getNamespaceCount(); ns++) {
+            Assert.assertEquals(sequential.getNamespace(ns), parallel.getNamespace(ns));
+            for (int i = 0; i < sequential.getClassCount(); i++) {
+                Assert.assertEquals(sequential.getClassName(ns, i), parallel.getClassName(ns, i));
+            }
+            for (int i = 0; i < sequential.getMethodCount(); i++) {
+                Assert.assertEquals(sequential.getMethodOwner(ns, i), parallel.getMethodOwner(ns, i));
+                Assert.assertEquals(sequential.getMethodName(ns, i), parallel.getMethodName(ns, i));
+                Assert.assertEquals(sequential.getMethodDescriptor(ns, i), parallel.getMethodDescriptor(ns, i));
+                String owner = sequential.getMethodOwner(0, i);
+                String name = sequential.getMethodName(0, i);
+                String desc = sequential.getMethodDescriptor(0, i);
+                Assert.assertEquals(sequential.deobfuscateMethod(owner, name, desc), parallel.deobfuscateMethod(owner, name, desc));
+            }
+            for (int i = 0; i < sequential.getFieldCount(); i++) {
+                Assert.assertEquals(sequential.getFieldOwner(ns, i), parallel.getFieldOwner(ns, i));
+                Assert.assertEquals(sequential.getFieldName(ns, i), parallel.getFieldName(ns, i));
+            }
+        }
+    }
+
+    @Test
+    public void namespacesAreMaterializedOnDemand() throws IOException {
+        TinyMappings mappings = TinyMappings.load(Channels.newChannel(new ByteArrayInputStream(BenchmarkFixtures.get().getMappingsBytes())));
+        for (int ns = 0; ns < mappings.getNamespaceCount(); ns++) {
+            Assert.assertFalse(mappings.isMaterialized(ns));
+        }
+        String owner = mappings.getMethodOwner(0, 0);
+        String name = mappings.getMethodName(0, 0);
+        String desc = mappings.getMethodDescriptor(0, 0);
+        String deobfOwner = mappings.deobfuscateClass(owner);
+        String deobfName = mappings.deobfuscateMethod(owner, name, desc);
+        Assert.assertNotNull(deobfName);
+        Assert.assertTrue(mappings.isMaterialized(0));
+        int to = mappings.getNamespaceCount() - 1;
+        for (int ns = 1; ns < mappings.getNamespaceCount(); ns++) {
+            Assert.assertFalse(mappings.isMaterialized(ns));
+        }
+        Assert.assertEquals(name, mappings.obfuscateMethod(deobfOwner, deobfName, mappings.getMethodDescriptor(to, 0)));
+        Assert.assertTrue(mappings.isMaterialized(to));
+    }
+}
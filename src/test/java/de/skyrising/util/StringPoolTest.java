@@ -0,0 +1,53 @@
+package de.skyrising.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StringPoolTest {
+    @Test
+    public void internDeduplicates() {
+        StringPool pool = new StringPool();
+        int a = pool.intern("net/minecraft/class_1");
+        int b = pool.intern(new StringView("xnet/minecraft/class_1", 1, 21));
+        Assert.assertEquals(a, b);
+        Assert.assertNotEquals(a, pool.intern("net/minecraft/class_2"));
+        Assert.assertEquals(2, pool.size());
+        Assert.assertEquals(a, pool.find("net/minecraft/class_1"));
+        Assert.assertEquals(-1, pool.find("net/minecraft/class_3"));
+        Assert.assertEquals("net/minecraft/class_1", pool.toString(a));
+    }
+
+    @Test
+    public void commitDeduplicates() {
+        StringPool names = new StringPool();
+        int name = names.intern("abc");
+        StringPool pool = new StringPool();
+        int desc = pool.intern("(Labc;)V");
+        pool.append('(');
+        pool.append('L');
+        pool.append(names, name);
+        pool.append(';');
+        pool.append(')');
+        pool.append('V');
+        Assert.assertEquals(desc, pool.commit());
+        Assert.assertEquals(names.find(pool, desc, 2, 5), name);
+        pool.append(pool, desc, 2, 5);
+        int copy = pool.commit();
+        Assert.assertEquals("abc", pool.toString(copy));
+        Assert.assertEquals("(Labc;)V", pool.toString(desc));
+    }
+
+    @Test
+    public void growsAfterTrim() {
+        StringPool pool = new StringPool();
+        pool.trim();
+        for (int i = 0; i < 10000; i++) {
+            Assert.assertEquals(i, pool.intern("s" + i));
+        }
+        pool.trim();
+        for (int i = 0; i < 10000; i++) {
+            Assert.assertEquals(i, pool.find("s" + i));
+        }
+        Assert.assertEquals(10000, pool.intern("new"));
+    }
+}
@@ -0,0 +1,39 @@
+package de.skyrising.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+public class StringViewTest {
+    @Test
+    public void splitIntoEnds() {
+        for (String s : new String[] {"", "a", "CLASS\ta\tb", "\ta\t\tb\t", "METHOD\ta\t()V\tb\tc\td"}) {
+            StringView[] expected = StringView.split(s, '\t');
+            int[] ends = new int[8];
+            int count = StringView.split(s, '\t', ends);
+            Assert.assertEquals(expected.length, count);
+            int start = 0;
+            for (int i = 0; i < count; i++) {
+                Assert.assertEquals(expected[i].toString(), s.substring(start, ends[i]));
+                start = ends[i] + 1;
+            }
+        }
+    }
+
+    @Test
+    public void splitCountsPastCapacity() {
+        int[] ends = new int[2];
+        Assert.assertEquals(4, StringView.split("a\tb\tc\td", '\t', ends));
+        Assert.assertArrayEquals(new int[] {1, 3}, ends);
+    }
+
+    @Test
+    public void hashOverBytes() {
+        String s = "net/minecraft/class_1\tn\u00e4me";
+        Utf8String utf8 = new Utf8String(s.getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals(s.substring(4, 13).hashCode(), new StringView(utf8, 4, 9).hashCode());
+        Assert.assertEquals(s.substring(18).hashCode(), new StringView(utf8, 18, s.length() - 18).hashCode());
+        Assert.assertEquals(new StringView(s.substring(4, 13)), new StringView(utf8, 4, 9));
+    }
+}
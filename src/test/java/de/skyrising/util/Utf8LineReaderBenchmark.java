@@ -1,35 +1,41 @@
 package de.skyrising.util;
 
+import de.skyrising.minecraft.debug.BenchmarkFixtures;
 import org.openjdk.jmh.annotations.*;
 import org.openjdk.jmh.infra.Blackhole;
 
 import java.io.IOException;
-import java.nio.channels.ReadableByteChannel;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.nio.channels.FileChannel;
 
 @State(Scope.Benchmark)
 @Warmup(iterations = 1)
 @Measurement(time = 1)
 @Fork(1)
 public class Utf8LineReaderBenchmark {
-    private Utf8LineReader reader;
-
-    @Param({"true", "false"})
-    public boolean direct;
+    @Param({"heap", "direct", "mapped"})
+    public String mode;
+    // buffer size in bytes, window size in KiB for the mapped mode
     @Param({"1024", "2048", "4096", "8192"})
     public int bufSize;
 
-    @Setup
-    public void setup() throws IOException {
-        ReadableByteChannel channel = Files.newByteChannel(Paths.get(System.getProperty("user.home"), "/.gradle/caches/fabric-loom/mappings/net.fabricmc.yarn-tiny-1.14.4-pre1-1"));
-        reader = new Utf8LineReader(channel, bufSize, direct);
+    private Utf8LineReader open(FileChannel channel) throws IOException {
+        if (mode.equals("mapped")) return new Utf8LineReader(channel, (long) bufSize << 10);
+        return new Utf8LineReader(channel, bufSize, mode.equals("direct"));
+    }
+
+    @Benchmark
+    public void readAllLines(Blackhole bh) throws IOException {
+        try (FileChannel channel = FileChannel.open(BenchmarkFixtures.get().mappingsFile)) {
+            Utf8LineReader reader = open(channel);
+            byte[] line;
+            while ((line = reader.readLine()) != null) bh.consume(line);
+        }
     }
 
     @Benchmark
-    public void testBasic(Blackhole bh) throws IOException {
-        int pos = reader.buf.position();
-        bh.consume(reader.readLine());
-        reader.buf.position(pos);
+    public void forEachLine(Blackhole bh) throws IOException {
+        try (FileChannel channel = FileChannel.open(BenchmarkFixtures.get().mappingsFile)) {
+            open(channel).forEachLine((bytes, off, len) -> bh.consume(len));
+        }
     }
 }
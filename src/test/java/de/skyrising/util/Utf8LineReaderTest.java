@@ -6,8 +6,14 @@ import org.junit.Test;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
 
 public class Utf8LineReaderTest {
     @Test
@@ -21,4 +27,99 @@ public class Utf8LineReaderTest {
         Assert.assertArrayEquals("".getBytes(StandardCharsets.UTF_8), reader.readLine());
         Assert.assertNull(reader.readLine());
     }
+
+    @Test
+    public void lineViews() throws IOException {
+        ReadableByteChannel bc = Channels.newChannel(new ByteArrayInputStream("test\n123\r\n\r\n456\n\n789".getBytes(StandardCharsets.UTF_8)));
+        Utf8LineReader reader = new Utf8LineReader(bc, 8, true);
+        ByteSlice line = new ByteSlice();
+        for (String expected : new String[] {"test", "123", "", "456", "", "789"}) {
+            Assert.assertTrue(reader.nextLine(line));
+            Assert.assertEquals(expected, line.toString());
+        }
+        Assert.assertFalse(reader.nextLine(line));
+    }
+
+    @Test
+    public void bufferBoundaries() throws IOException {
+        byte[] bytes = randomLines();
+        List<String> expected = split(bytes);
+        for (int bufSize : new int[] {8, 13, 64, 1024}) {
+            for (boolean direct : new boolean[] {false, true}) {
+                List<String> lines = new ArrayList<>();
+                new Utf8LineReader(Channels.newChannel(new ByteArrayInputStream(bytes)), bufSize, direct)
+                        .forEachLine((b, off, len) -> lines.add(new String(b, off, len, StandardCharsets.ISO_8859_1)));
+                Assert.assertEquals(expected, lines);
+            }
+        }
+    }
+
+    @Test
+    public void mappedWindows() throws IOException {
+        byte[] bytes = randomLines();
+        Path file = Files.createTempFile("lines", ".txt");
+        try {
+            Files.write(file, bytes);
+            List<String> expected = split(bytes);
+            for (long windowSize : new long[] {8, 13, 64, 1024, Utf8LineReader.DEFAULT_WINDOW_SIZE}) {
+                try (FileChannel channel = FileChannel.open(file)) {
+                    Utf8LineReader reader = new Utf8LineReader(channel, windowSize);
+                    List<String> lines = new ArrayList<>();
+                    byte[] line;
+                    while ((line = reader.readLine()) != null) lines.add(new String(line, StandardCharsets.ISO_8859_1));
+                    Assert.assertEquals(expected, lines);
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void openMapsOnlyLargeFiles() throws IOException {
+        Path file = Files.createTempFile("lines", ".txt");
+        try {
+            byte[] bytes = randomLines();
+            for (int size : new int[] {100, (int) Utf8LineReader.MAPPED_THRESHOLD}) {
+                byte[] contents = new byte[size];
+                for (int i = 0; i < size; i++) contents[i] = bytes[i % bytes.length];
+                Files.write(file, contents);
+                try (FileChannel channel = FileChannel.open(file)) {
+                    Utf8LineReader reader = Utf8LineReader.open(channel, 64);
+                    Assert.assertEquals(size >= Utf8LineReader.MAPPED_THRESHOLD, reader.isMapped());
+                    List<String> lines = new ArrayList<>();
+                    byte[] line;
+                    while ((line = reader.readLine()) != null) lines.add(new String(line, StandardCharsets.ISO_8859_1));
+                    Assert.assertEquals(split(contents), lines);
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static List<String> split(byte[] bytes) {
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i <= bytes.length; i++) {
+            if (i < bytes.length && bytes[i] != '\n') continue;
+            if (i == bytes.length && start == i) break;
+            int end = i < bytes.length && i > start && bytes[i - 1] == '\r' ? i - 1 : i;
+            lines.add(new String(bytes, start, end - start, StandardCharsets.ISO_8859_1));
+            start = i + 1;
+        }
+        return lines;
+    }
+
+    private static byte[] randomLines() {
+        Random random = new Random(0x5eed);
+        byte[] bytes = new byte[100000];
+        for (int i = 0; i < bytes.length; i++) {
+            int r = random.nextInt(100);
+            bytes[i] = r < 5 ? (byte) '\n' : r < 7 ? (byte) '\r' : (byte) ('a' + r % 26);
+        }
+        // a line longer than the buffer
+        for (int i = 5000; i < 5100; i++) bytes[i] = 'x';
+        return bytes;
+    }
 }
@@ -0,0 +1,48 @@
+package de.skyrising.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+public class Utf8StringTest {
+    private static final String[] STRINGS = {
+        "",
+        "net/minecraft/class_1234",
+        "\tat net.minecraft.server.MinecraftServer.tick(MinecraftServer.java:812)",
+        "Player \u00e4\u00f6\u00fc joined",
+        "0123456789abcdef\u20ac",
+        "emoji \ud83d\ude00 in the middle of a line",
+    };
+
+    @Test
+    public void matchesString() {
+        for (String s : STRINGS) {
+            Utf8String utf8 = new Utf8String(s.getBytes(StandardCharsets.UTF_8));
+            Assert.assertEquals(s.length(), utf8.length());
+            for (int i = 0; i < s.length(); i++) {
+                Assert.assertEquals(s.charAt(i), utf8.charAt(i));
+            }
+            Assert.assertEquals(s, utf8.toString());
+            Assert.assertEquals(s.hashCode(), utf8.hashCode());
+            if (s.length() > 2) Assert.assertEquals(s.substring(1, s.length() - 1), utf8.subSequence(1, s.length() - 1).toString());
+        }
+    }
+
+    @Test
+    public void equalsAcrossRepresentations() {
+        for (String s : STRINGS) {
+            Utf8String bytes = new Utf8String(s.getBytes(StandardCharsets.UTF_8));
+            Utf8String chars = new Utf8String(s.toCharArray());
+            Assert.assertEquals(bytes, chars);
+            Assert.assertEquals(chars, bytes);
+        }
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void malformedInputFailsOnDecode() {
+        Utf8String s = new Utf8String(new byte[] {'a', 'b', (byte) 0xc3});
+        Assert.assertEquals('a', s.charAt(0));
+        s.charAt(2);
+    }
+}
@@ -0,0 +1,123 @@
+package de.skyrising.util;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+public class ZipWriterTest {
+    private Path input;
+    private Path output;
+    private final Map<String, byte[]> contents = new LinkedHashMap<>();
+
+    @Before
+    public void setUp() throws IOException {
+        input = Files.createTempFile("zip-writer-in", ".zip");
+        output = Files.createTempFile("zip-writer-out", ".zip");
+        Random random = new Random(0);
+        byte[] binary = new byte[200_000];
+        random.nextBytes(binary);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 5000; i++) text.append("\tat net.minecraft.class_").append(i).append(".method_").append(i).append("(Unknown Source)\n");
+        contents.put("logs/", new byte[0]);
+        contents.put("logs/latest.log", text.toString().getBytes(StandardCharsets.UTF_8));
+        contents.put("classpath.txt", "versions/1.14.4/1.14.4.jar\n".getBytes(StandardCharsets.UTF_8));
+        contents.put("screenshots/random.bin", binary);
+        contents.put("cr\u00e9dits.txt", "caf\u00e9".getBytes(StandardCharsets.UTF_8));
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(input))) {
+            for (Map.Entry<String, byte[]> e : contents.entrySet()) {
+                ZipEntry entry = new ZipEntry(e.getKey());
+                if (e.getKey().endsWith(".bin")) {
+                    entry.setMethod(ZipEntry.STORED);
+                    entry.setSize(e.getValue().length);
+                    CRC32 crc = new CRC32();
+                    crc.update(e.getValue());
+                    entry.setCrc(crc.getValue());
+                }
+                out.putNextEntry(entry);
+                out.write(e.getValue());
+                out.closeEntry();
+            }
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(input);
+        Files.deleteIfExists(output);
+    }
+
+    @Test
+    public void readEntries() throws IOException {
+        try (ZipIndex zip = ZipIndex.open(input)) {
+            Assert.assertEquals(new ArrayList<>(contents.keySet()), names(zip.getEntries()));
+            for (ZipIndex.Entry entry : zip.getEntries()) {
+                Assert.assertArrayEquals(entry.name, contents.get(entry.name), read(zip.getInputStream(entry)));
+            }
+            Assert.assertEquals(ZipIndex.STORED, zip.getEntry("screenshots/random.bin").method);
+            Assert.assertNull(zip.getEntry("missing"));
+        }
+    }
+
+    @Test
+    public void copyRawAndRewrite() throws IOException {
+        byte[] replaced = "replaced\n".getBytes(StandardCharsets.UTF_8);
+        try (ZipIndex zip = ZipIndex.open(input);
+             FileChannel out = FileChannel.open(output, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             ZipWriter writer = new ZipWriter(out)) {
+            for (ZipIndex.Entry entry : zip.getEntries()) {
+                if (!entry.name.equals("logs/latest.log")) {
+                    writer.copyRaw(zip, entry);
+                    continue;
+                }
+                ZipWriter.Deflated data = new ZipWriter.Deflated();
+                data.write(replaced);
+                data.close();
+                writer.write(entry, data);
+            }
+        }
+        contents.put("logs/latest.log", replaced);
+        try (ZipFile zip = new ZipFile(output.toFile())) {
+            List<String> names = new ArrayList<>();
+            for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements(); ) {
+                ZipEntry entry = e.nextElement();
+                names.add(entry.getName());
+                Assert.assertArrayEquals(entry.getName(), contents.get(entry.getName()), read(zip.getInputStream(entry)));
+            }
+            Assert.assertEquals(new ArrayList<>(contents.keySet()), names);
+        }
+        try (ZipIndex zip = ZipIndex.open(output)) {
+            Assert.assertEquals(new ArrayList<>(contents.keySet()), names(zip.getEntries()));
+        }
+    }
+
+    private static List<String> names(List<ZipIndex.Entry> entries) {
+        List<String> names = new ArrayList<>();
+        for (ZipIndex.Entry entry : entries) names.add(entry.name);
+        return names;
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        try (InputStream i = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = i.read(buf)) >= 0) out.write(buf, 0, n);
+            return out.toByteArray();
+        }
+    }
+}